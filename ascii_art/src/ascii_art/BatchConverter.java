@@ -0,0 +1,232 @@
+package ascii_art;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_output.HtmlAsciiOutput;
+import image.Image;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Converts many images to ASCII art without user interaction. The images are converted on a bounded pool
+ * of worker threads, and each one is written to its own HTML file. The rendered glyphs are shared by all
+ * the conversions (they are cached by CharRenderer), so the font is rendered once per process and not
+ * once per image. Every image gets an HTML file of its own name, so images of the same name (in different
+ * directories, or with different extensions) get the names followed by "-1", "-2" and so on, in the order
+ * of the arguments. The output directory is created (with its missing parents) before any image is
+ * converted. With the gzip option, the HTML files are written gzip-compressed, which saves most of the
+ * disk I/O of big outputs.
+ */
+public class BatchConverter {
+
+    // All the options and their defaults:
+    private static final String OPT_CHARS = "-chars";
+    private static final String OPT_RES = "-res";
+    private static final String OPT_OUT = "-out";
+    private static final String OPT_THREADS = "-threads";
+    private static final String OPT_GZIP = "-gzip";
+    private static final String DEFAULT_OUTPUT_DIR = ".";
+    private static final String OUTPUT_EXTENSION = ".html";
+    private static final String GZIP_EXTENSION = ".gz";  // added to the extension of compressed outputs.
+    private static final char EXTENSION_SEPARATOR = '.';
+    private static final String DUPLICATE_NAME_SEPARATOR = "-";  // precedes the number of a repeated name.
+    private static final double CELL_ASPECT_RATIO = 1;  // square sub-images, as the matcher uses.
+
+    // All the messages to the user:
+    private static final String USAGE_ERROR = "USAGE: java asciiArt -batch [-chars <range>] [-res <chars in " +
+            "row>] [-out <directory>] [-threads <number>] [-gzip] <image or directory>...";
+    private static final String FILE_ERROR = "Failed to open image file ";
+    private static final String CONVERT_ERROR = "Failed to convert image file ";
+    private static final String OUTPUT_ERROR = "Failed to write the output of image file ";
+    private static final String OUTPUT_DIR_ERROR = "Failed to create the output directory ";
+    private static final String IMAGE_TIMING_FORMAT = "%s -> %s: %d ms%n";
+    private static final String TOTAL_TIMING_FORMAT = "Converted %d of %d images in %d ms%n";
+    private static final int NANOS_IN_MILLI = 1_000_000;
+
+    private final List<File> inputs;  // the image files to convert.
+    private final List<String> outputNames;  // the name of the output file of each input, all different.
+    private final Character[] charSet;  // the available characters for ASCII art.
+    private final int charsInRow;  // the requested number of characters in row.
+    private final File outputDir;  // the directory to write the HTML files to.
+    private final int numThreads;  // the number of worker threads.
+    private final boolean compressed;  // true iff the HTML files are written gzip-compressed.
+
+    /*
+     * Constructor. Is called by the parse method only.
+     */
+    private BatchConverter(List<File> inputs, Character[] charSet, int charsInRow, File outputDir,
+                           int numThreads, boolean compressed) {
+        this.inputs = inputs;
+        this.outputNames = getOutputNames(inputs, compressed);
+        this.charSet = charSet;
+        this.charsInRow = charsInRow;
+        this.outputDir = outputDir;
+        this.numThreads = numThreads;
+        this.compressed = compressed;
+    }
+
+    /**
+     * Parses the batch mode arguments. Every argument that isn't an option is an image file or a directory,
+     * all of whose files are converted. If the arguments are incorrect, prints the usage error message.
+     * @param args the program arguments, without the batch mode flag.
+     * @return the converter for the given arguments, or null if they are incorrect.
+     */
+    public static BatchConverter parse(String[] args) {
+        String charRange = Shell.INITIAL_CHARS_RANGE;
+        int charsInRow = Shell.INITIAL_CHARS_IN_ROW;
+        String outputDir = DEFAULT_OUTPUT_DIR;
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        boolean compressed = false;
+        List<File> inputs = new ArrayList<>();
+        try {
+            for (int i = 0 ; i < args.length ; i++) {
+                switch (args[i]) {
+                    case OPT_CHARS:
+                        charRange = args[++i];
+                        break;
+                    case OPT_RES:
+                        charsInRow = Integer.parseInt(args[++i]);
+                        break;
+                    case OPT_OUT:
+                        outputDir = args[++i];
+                        break;
+                    case OPT_THREADS:
+                        numThreads = Integer.parseInt(args[++i]);
+                        break;
+                    case OPT_GZIP:
+                        compressed = true;
+                        break;
+                    default:
+                        addInputs(new File(args[i]), inputs);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            inputs.clear();  // an option is missing its value, or the value isn't a number.
+        }
+        char[] range = Shell.parseCharRange(charRange);
+        if (inputs.isEmpty() || range == null || charsInRow <= 0 || numThreads <= 0) {
+            System.out.println(USAGE_ERROR);
+            return null;
+        }
+        return new BatchConverter(inputs, Shell.getCharSet(range), charsInRow, new File(outputDir),
+                numThreads, compressed);
+    }
+
+    /**
+     * Converts all the input images, and prints the time each conversion took and the total time. If the
+     * output directory can't be created, no image is converted.
+     */
+    public void run() {
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(outputDir.toPath());
+        } catch (IOException e) {
+            Logger.getGlobal().severe(OUTPUT_DIR_ERROR + outputDir + ": " + e);
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(numThreads, inputs.size()));
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0 ; i < inputs.size() ; i++) {
+            File input = inputs.get(i);
+            String outputName = outputNames.get(i);
+            results.add(pool.submit(() -> convert(input, outputName)));
+        }
+        int numConverted = 0;
+        for (int i = 0 ; i < results.size() ; i++) {
+            try {
+                if (results.get(i).get()) {
+                    numConverted++;
+                }
+            } catch (ExecutionException e) {
+                Logger.getGlobal().severe(CONVERT_ERROR + inputs.get(i) + ": " + e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        pool.shutdownNow();
+        System.out.printf(TOTAL_TIMING_FORMAT, numConverted, inputs.size(),
+                (System.nanoTime() - start) / NANOS_IN_MILLI);
+    }
+
+    /*
+     * Converts one image to an HTML file of the given name in the output directory. Returns true iff the
+     * image was converted and its HTML file was written.
+     */
+    private boolean convert(File input, String outputName) {
+        long start = System.nanoTime();
+        Image img = Image.fromFile(input.getPath());
+        if (img == null) {
+            Logger.getGlobal().severe(FILE_ERROR + input);
+            return false;
+        }
+        int imageCharsInRow = Math.max(Math.min(charsInRow, Shell.getMaxCharsInRow(img)),
+                Shell.getMinCharsInRow(img));
+        File output = new File(outputDir, outputName);
+        HtmlAsciiOutput htmlOutput = new HtmlAsciiOutput(output.getPath(), Shell.FONT_NAME, CELL_ASPECT_RATIO,
+                compressed);
+        new BrightnessImgCharMatcher(img, Shell.FONT_NAME).chooseChars(imageCharsInRow, charSet, htmlOutput);
+        if (htmlOutput.hasFailed()) {
+            Logger.getGlobal().severe(OUTPUT_ERROR + input);
+            return false;
+        }
+        System.out.printf(IMAGE_TIMING_FORMAT, input, output, (System.nanoTime() - start) / NANOS_IN_MILLI);
+        return true;
+    }
+
+    /*
+     * Adds the given file to the inputs, or all the files in it (sorted by name) if it is a directory.
+     */
+    private static void addInputs(File file, List<File> inputs) {
+        File[] files = file.listFiles(File::isFile);
+        if (files == null) {
+            inputs.add(file);
+            return;
+        }
+        Arrays.sort(files);
+        inputs.addAll(Arrays.asList(files));
+    }
+
+    /*
+     * Returns the names of the output files of the given image files, in the same order: the name of each
+     * image with the HTML extension instead of its own (followed by the gzip extension if the output is
+     * compressed). A name that was already given to a previous image, ignoring case (since the file system
+     * may ignore it too), is followed by the first number that makes it unique.
+     */
+    private static List<String> getOutputNames(List<File> inputs, boolean compressed) {
+        String extension = OUTPUT_EXTENSION + (compressed ? GZIP_EXTENSION : "");
+        Set<String> usedNames = new HashSet<>();
+        List<String> outputNames = new ArrayList<>();
+        for (File input : inputs) {
+            String baseName = getBaseName(input);
+            String name = baseName + extension;
+            for (int i = 1 ; !usedNames.add(name.toLowerCase()) ; i++) {
+                name = baseName + DUPLICATE_NAME_SEPARATOR + i + extension;
+            }
+            outputNames.add(name);
+        }
+        return outputNames;
+    }
+
+    /*
+     * Returns the name of the given file without its extension.
+     */
+    private static String getBaseName(File input) {
+        String name = input.getName();
+        int extensionIndex = name.lastIndexOf(EXTENSION_SEPARATOR);
+        if (extensionIndex > 0) {
+            name = name.substring(0, extensionIndex);
+        }
+        return name;
+    }
+}
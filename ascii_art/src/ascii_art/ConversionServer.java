@@ -0,0 +1,339 @@
+package ascii_art;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_output.HtmlAsciiOutput;
+import ascii_output.StreamingAsciiOutput;
+import ascii_output.TextAsciiOutput;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import image.Image;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * A small HTTP server that converts uploaded images to ASCII art, so that other tools can use the converter
+ * without starting a process per image. The server listens on the loopback address only. An image is
+ * converted by a POST request to /convert whose body is the image file, with the optional query
+ * parameters chars (a range as in the 'add' command, "0-9" by default), res (the number of characters in
+ * row, 64 by default), aspect (the ratio of the height of the sub-image of a character to its width, 1 by
+ * default) and format ("html", the default, or "text"). The ASCII art is streamed back as the
+ * rows are chosen. Uploads of more than MAX_UPLOAD_LENGTH bytes, and images of more than MAX_IMAGE_PIXELS
+ * pixels, are rejected with the 413 status before they are decoded, so a request can't make the server
+ * hold more than a bounded amount of memory.
+ * Every request is handled by a thread of a bounded pool. The rendered glyphs and their brightnesses are
+ * cached per process, so they are shared by all the requests.
+ */
+public class ConversionServer {
+
+    // All the options and their defaults:
+    private static final String OPT_PORT = "-port";
+    private static final String OPT_THREADS = "-threads";
+    private static final int DEFAULT_PORT = 8080;
+    private static final int BACKLOG = 0;  // the system default.
+
+    // The request and its parameters:
+    private static final String CONTEXT_PATH = "/convert";
+    private static final String METHOD_POST = "POST";
+    private static final String PARAM_CHARS = "chars";
+    private static final String PARAM_RES = "res";
+    private static final String PARAM_ASPECT = "aspect";
+    private static final double DEFAULT_CELL_ASPECT_RATIO = 1;  // square sub-images.
+    private static final String PARAM_FORMAT = "format";
+    private static final String FORMAT_HTML = "html";
+    private static final String FORMAT_TEXT = "text";
+    private static final String PARAM_SEPARATOR = "&";
+    private static final String VALUE_SEPARATOR = "=";
+    private static final String CONTENT_LENGTH = "Content-Length";
+    private static final int MAX_UPLOAD_LENGTH = 16 << 20;  // the maximal length of an upload, 16 MB.
+    private static final long MAX_IMAGE_PIXELS = 1 << 25;  // the maximal number of pixels of an image.
+    private static final int FIRST_IMAGE = 0;  // the index of the image to read from an image file.
+
+    // The response:
+    private static final String CONTENT_TYPE = "Content-Type";
+    private static final String ALLOW = "Allow";
+    private static final String HTML_TYPE = "text/html; charset=utf-8";
+    private static final String TEXT_TYPE = "text/plain; charset=utf-8";
+    private static final int STATUS_OK = 200;
+    private static final int STATUS_BAD_REQUEST = 400;
+    private static final int STATUS_METHOD_NOT_ALLOWED = 405;
+    private static final int STATUS_PAYLOAD_TOO_LARGE = 413;
+    private static final long CHUNKED_LENGTH = 0;  // the response length of a streamed response.
+
+    // All the messages:
+    private static final String USAGE_ERROR =
+            "USAGE: java asciiArt -serve [-port <port>] [-threads <number>]";
+    private static final String LISTENING_FORMAT = "Listening on http://%s:%d%s%n";
+    private static final String SERVER_ERROR = "Failed to start the server: ";
+    private static final String REQUEST_ERROR = "Failed to handle a request: ";
+    private static final String WRONG_PARAMETERS_ERROR = "Wrong parameters given!\n";
+    private static final String CHARS_ERROR = "Wrong chars range given!\n";
+    private static final String IMAGE_ERROR = "Failed to read the image!\n";
+    private static final String METHOD_ERROR = "Only POST is supported!\n";
+    private static final String UPLOAD_SIZE_ERROR = "The upload is too large!\n";
+    private static final String IMAGE_SIZE_ERROR = "The image has too many pixels!\n";
+
+    private final int port;  // the port to listen on, or 0 for any free port.
+    private final int numThreads;  // the number of threads that handle the requests.
+    private HttpServer server;  // the running server, null if it isn't running.
+    private ExecutorService executor;  // the threads of the running server.
+
+    /*
+     * Constructor. Is called by the parse method only.
+     */
+    private ConversionServer(int port, int numThreads) {
+        this.port = port;
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * Parses the server mode arguments. If the arguments are incorrect, prints the usage error message.
+     * @param args the program arguments, without the server mode flag.
+     * @return the server for the given arguments, or null if they are incorrect.
+     */
+    public static ConversionServer parse(String[] args) {
+        int port = DEFAULT_PORT;
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        try {
+            for (int i = 0 ; i < args.length ; i++) {
+                switch (args[i]) {
+                    case OPT_PORT:
+                        port = Integer.parseInt(args[++i]);
+                        break;
+                    case OPT_THREADS:
+                        numThreads = Integer.parseInt(args[++i]);
+                        break;
+                    default:
+                        port = -1;  // an unknown argument.
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            port = -1;  // an option is missing its value, or the value isn't a number.
+        }
+        if (port < 0 || port > 0xffff || numThreads <= 0) {
+            System.out.println(USAGE_ERROR);
+            return null;
+        }
+        return new ConversionServer(port, numThreads);
+    }
+
+    /**
+     * Starts the server, and prints the address it listens on. The server runs until it is stopped, or until
+     * the process ends.
+     */
+    public void run() {
+        try {
+            server = HttpServer.create(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+            server.createContext(CONTEXT_PATH, this::handle);
+            executor = Executors.newFixedThreadPool(numThreads);
+            server.setExecutor(executor);
+            server.start();
+            System.out.printf(LISTENING_FORMAT, server.getAddress().getHostString(), getPort(), CONTEXT_PATH);
+        } catch (IOException e) {
+            server = null;
+            Logger.getGlobal().severe(SERVER_ERROR + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the port the server listens on (which is chosen by the system if the port 0 was requested),
+     * or -1 if the server isn't running.
+     */
+    public int getPort() {
+        return server == null ? -1 : server.getAddress().getPort();
+    }
+
+    /**
+     * Stops the server: it stops accepting requests at once, and its threads end after finishing the
+     * requests that are being handled.
+     */
+    public void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(0);
+        executor.shutdown();
+        server = null;
+    }
+
+    /*
+     * Handles one request: converts the uploaded image with the requested parameters, and streams the ASCII
+     * art back. Responds with an error status if the request is incorrect.
+     */
+    private void handle(HttpExchange exchange) {
+        try {
+            if (!exchange.getRequestMethod().equals(METHOD_POST)) {
+                exchange.getResponseHeaders().set(ALLOW, METHOD_POST);
+                sendError(exchange, STATUS_METHOD_NOT_ALLOWED, METHOD_ERROR);
+                return;
+            }
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            char[] range = Shell.parseCharRange(
+                    params.getOrDefault(PARAM_CHARS, Shell.INITIAL_CHARS_RANGE));
+            if (range == null) {
+                sendError(exchange, STATUS_BAD_REQUEST, CHARS_ERROR);
+                return;
+            }
+            String format = params.getOrDefault(PARAM_FORMAT, FORMAT_HTML);
+            int charsInRow = parseCharsInRow(params.get(PARAM_RES));
+            double cellAspectRatio = parseCellAspectRatio(params.get(PARAM_ASPECT));
+            if (charsInRow <= 0 || cellAspectRatio <= 0 ||
+                    !(format.equals(FORMAT_HTML) || format.equals(FORMAT_TEXT))) {
+                sendError(exchange, STATUS_BAD_REQUEST, WRONG_PARAMETERS_ERROR);
+                return;
+            }
+            BufferedImage decoded = receiveImage(exchange);
+            if (decoded == null) {
+                return;
+            }
+            Image img = Image.fromBufferedImage(decoded);
+            charsInRow = Math.max(Math.min(charsInRow, Shell.getMaxCharsInRow(img)),
+                    Shell.getMinCharsInRow(img));
+            boolean html = format.equals(FORMAT_HTML);
+            exchange.getResponseHeaders().set(CONTENT_TYPE, html ? HTML_TYPE : TEXT_TYPE);
+            exchange.sendResponseHeaders(STATUS_OK, CHUNKED_LENGTH);
+            OutputStream body = exchange.getResponseBody();
+            StreamingAsciiOutput output = html ?
+                    new HtmlAsciiOutput(body, Shell.FONT_NAME, cellAspectRatio, false) :
+                    new TextAsciiOutput(body);
+            BrightnessImgCharMatcher matcher = new BrightnessImgCharMatcher(img, Shell.FONT_NAME);
+            matcher.setCellAspectRatio(cellAspectRatio);
+            matcher.chooseChars(charsInRow, Shell.getCharSet(range), output);
+        } catch (IOException | RuntimeException e) {
+            Logger.getGlobal().severe(REQUEST_ERROR + e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /*
+     * Reads and decodes the uploaded image of the given request. If the upload is too large, the image has
+     * too many pixels or it can't be decoded, sends the error response and returns null. The size of the
+     * image is read from its header, before its pixels are decoded.
+     */
+    private static BufferedImage receiveImage(HttpExchange exchange) throws IOException {
+        if (getContentLength(exchange) > MAX_UPLOAD_LENGTH) {
+            sendError(exchange, STATUS_PAYLOAD_TOO_LARGE, UPLOAD_SIZE_ERROR);
+            return null;
+        }
+        // The declared length may be missing (in a chunked upload), so the body is read up to the limit:
+        byte[] upload = exchange.getRequestBody().readNBytes(MAX_UPLOAD_LENGTH + 1);
+        if (upload.length > MAX_UPLOAD_LENGTH) {
+            sendError(exchange, STATUS_PAYLOAD_TOO_LARGE, UPLOAD_SIZE_ERROR);
+            return null;
+        }
+        try (ImageInputStream stream = ImageIO.createImageInputStream(new ByteArrayInputStream(upload))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                sendError(exchange, STATUS_BAD_REQUEST, IMAGE_ERROR);
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                if ((long) reader.getWidth(FIRST_IMAGE) * reader.getHeight(FIRST_IMAGE) > MAX_IMAGE_PIXELS) {
+                    sendError(exchange, STATUS_PAYLOAD_TOO_LARGE, IMAGE_SIZE_ERROR);
+                    return null;
+                }
+                return reader.read(FIRST_IMAGE);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IIOException e) {
+            sendError(exchange, STATUS_BAD_REQUEST, IMAGE_ERROR);  // the image file is corrupt.
+            return null;
+        }
+    }
+
+    /*
+     * Returns the declared length of the body of the given request, or -1 if it isn't declared.
+     */
+    private static long getContentLength(HttpExchange exchange) {
+        String length = exchange.getRequestHeaders().getFirst(CONTENT_LENGTH);
+        if (length == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(length.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /*
+     * Returns the number of characters in row of the given res parameter, the default if there is no such
+     * parameter, or -1 if it isn't a number.
+     */
+    private static int parseCharsInRow(String res) {
+        if (res == null) {
+            return Shell.INITIAL_CHARS_IN_ROW;
+        }
+        try {
+            return Integer.parseInt(res);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /*
+     * Returns the cell aspect ratio of the given aspect parameter, the default if there is no such parameter,
+     * or -1 if it isn't a positive finite number.
+     */
+    private static double parseCellAspectRatio(String aspect) {
+        if (aspect == null) {
+            return DEFAULT_CELL_ASPECT_RATIO;
+        }
+        try {
+            double ratio = Double.parseDouble(aspect);
+            return ratio > 0 && !Double.isInfinite(ratio) ? ratio : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /*
+     * Parses the given raw query string of a URI to its parameters, by name. Later values of a repeated
+     * parameter replace earlier ones.
+     */
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String param : query.split(PARAM_SEPARATOR)) {
+            String[] nameAndValue = param.split(VALUE_SEPARATOR, 2);
+            String value = nameAndValue.length > 1 ? nameAndValue[1] : "";
+            params.put(URLDecoder.decode(nameAndValue[0], StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    /*
+     * Sends a response with the given error status and message.
+     */
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set(CONTENT_TYPE, TEXT_TYPE);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream stream = exchange.getResponseBody()) {
+            stream.write(body);
+        }
+    }
+}
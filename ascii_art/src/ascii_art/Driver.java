@@ -1,6 +1,7 @@
 package ascii_art;
 
 import image.Image;
+import java.util.Arrays;
 import java.util.logging.Logger;
 
 /**
@@ -9,6 +10,9 @@ import java.util.logging.Logger;
 public class Driver {
 
     private static final int NUM_ARGS = 1;  // the number of command line arguments.
+    private static final String BATCH_FLAG = "-batch";  // the first argument in the batch mode.
+    private static final String FRAMES_FLAG = "-frames";  // the first argument in the frames mode.
+    private static final String SERVE_FLAG = "-serve";  // the first argument in the server mode.
 
     // All the messages to the user:
     private static final String USAGE_ERROR = "USAGE: java asciiArt ";
@@ -18,9 +22,35 @@ public class Driver {
      * The main method. If the user didn't supply the image filename in the command line arguments, then the
      * usage error message is printed. If there is any problem with the given file, then the file error
      * message is printed. Otherwise, the run function of the Shell object is called.
+     * If the first argument is the batch flag, the rest of the arguments are passed to the BatchConverter,
+     * which converts all the given images without user interaction. If it is the frames flag, the rest of
+     * the arguments are passed to the FramePlayer, which plays a directory of frames as an animation. If it
+     * is the serve flag, the rest of the arguments are passed to the ConversionServer, which converts images
+     * that are uploaded to it over HTTP.
      * @param args the program arguments.
      */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals(BATCH_FLAG)) {
+            BatchConverter converter = BatchConverter.parse(Arrays.copyOfRange(args, 1, args.length));
+            if (converter != null) {
+                converter.run();
+            }
+            return;
+        }
+        if (args.length > 0 && args[0].equals(FRAMES_FLAG)) {
+            FramePlayer player = FramePlayer.parse(Arrays.copyOfRange(args, 1, args.length));
+            if (player != null) {
+                player.run();
+            }
+            return;
+        }
+        if (args.length > 0 && args[0].equals(SERVE_FLAG)) {
+            ConversionServer server = ConversionServer.parse(Arrays.copyOfRange(args, 1, args.length));
+            if (server != null) {
+                server.run();
+            }
+            return;
+        }
         if (args.length != NUM_ARGS) {
             System.out.println(USAGE_ERROR);
             return;
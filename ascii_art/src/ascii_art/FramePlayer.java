@@ -0,0 +1,234 @@
+package ascii_art;
+
+import ascii_art.img_to_char.FrameSequenceMatcher;
+import ascii_output.AnsiConsoleWriter;
+import image.Image;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Plays a sequence of frames (a directory of numbered images) as an ASCII animation on an ANSI terminal.
+ * The characters are matched to the frames by a FrameSequenceMatcher, and only the cells whose characters
+ * changed are redrawn. The next frame is read on a background thread while the current one is matched and
+ * drawn, and the frames are drawn at most at the requested rate.
+ */
+public class FramePlayer {
+
+    // All the options and their defaults:
+    private static final String OPT_CHARS = "-chars";
+    private static final String OPT_RES = "-res";
+    private static final String OPT_FPS = "-fps";
+    private static final String OPT_THRESHOLD = "-threshold";
+    private static final String OPT_ASPECT = "-aspect";
+    private static final String OPT_LINEAR = "-linear";
+    private static final String OPT_PARALLEL = "-parallel";
+    private static final int DEFAULT_FPS = 30;
+    private static final double DEFAULT_THRESHOLD = 0.01;
+    private static final double DEFAULT_CELL_ASPECT_RATIO = 1;  // square sub-images.
+
+    // All the messages to the user:
+    private static final String USAGE_ERROR = "USAGE: java asciiArt -frames [-chars <range>] [-res <chars " +
+            "in row>] [-fps <frames per second>] [-threshold <brightness change>] [-aspect <cell height " +
+            "to width>] [-linear] [-parallel] <directory>";
+    private static final String FILE_ERROR = "Failed to open image file ";
+    private static final String STATS_FORMAT = "Played %d frames in %d ms, redrew %d of %d cells%n";
+    private static final long NANOS_IN_SECOND = 1_000_000_000L;
+    private static final int NANOS_IN_MILLI = 1_000_000;
+
+    private final File[] frames;  // the frame files, in the order of their numbers.
+    private final Character[] charSet;  // the available characters for ASCII art.
+    private final int charsInRow;  // the requested number of characters in row.
+    private final int fps;  // the maximal number of frames drawn per second.
+    private final double threshold;  // the minimal change in the brightness of a tile to match it again.
+    private final double cellAspectRatio;  // the ratio of the height of a sub-image to its width.
+    private final boolean linearLight;  // true iff the brightnesses are measured in linear light.
+    private final boolean parallel;  // true iff the rows of every frame are converted in parallel.
+
+    /*
+     * Constructor. Is called by the parse method only.
+     */
+    private FramePlayer(File[] frames, Character[] charSet, int charsInRow, int fps, double threshold,
+                        double cellAspectRatio, boolean linearLight, boolean parallel) {
+        this.frames = frames;
+        this.charSet = charSet;
+        this.charsInRow = charsInRow;
+        this.fps = fps;
+        this.threshold = threshold;
+        this.cellAspectRatio = cellAspectRatio;
+        this.linearLight = linearLight;
+        this.parallel = parallel;
+    }
+
+    /**
+     * Parses the frames mode arguments. The only argument that isn't an option is the directory of the
+     * frames. If the arguments are incorrect, prints the usage error message.
+     * @param args the program arguments, without the frames mode flag.
+     * @return the player for the given arguments, or null if they are incorrect.
+     */
+    public static FramePlayer parse(String[] args) {
+        String charRange = Shell.INITIAL_CHARS_RANGE;
+        int charsInRow = Shell.INITIAL_CHARS_IN_ROW;
+        int fps = DEFAULT_FPS;
+        double threshold = DEFAULT_THRESHOLD;
+        double cellAspectRatio = DEFAULT_CELL_ASPECT_RATIO;
+        boolean linearLight = false;
+        boolean parallel = false;
+        File[] frames = null;
+        try {
+            for (int i = 0 ; i < args.length ; i++) {
+                switch (args[i]) {
+                    case OPT_CHARS:
+                        charRange = args[++i];
+                        break;
+                    case OPT_RES:
+                        charsInRow = Integer.parseInt(args[++i]);
+                        break;
+                    case OPT_FPS:
+                        fps = Integer.parseInt(args[++i]);
+                        break;
+                    case OPT_THRESHOLD:
+                        threshold = Double.parseDouble(args[++i]);
+                        break;
+                    case OPT_ASPECT:
+                        cellAspectRatio = Double.parseDouble(args[++i]);
+                        break;
+                    case OPT_LINEAR:
+                        linearLight = true;
+                        break;
+                    case OPT_PARALLEL:
+                        parallel = true;
+                        break;
+                    default:
+                        frames = new File(args[i]).listFiles(File::isFile);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            frames = null;  // an option is missing its value, or the value isn't a number.
+        }
+        char[] range = Shell.parseCharRange(charRange);
+        if (frames == null || frames.length == 0 || range == null || charsInRow <= 0 || fps <= 0 ||
+                threshold < 0 || !(cellAspectRatio > 0) || Double.isInfinite(cellAspectRatio)) {
+            System.out.println(USAGE_ERROR);
+            return null;
+        }
+        Arrays.sort(frames, Comparator.comparingLong(FramePlayer::getFrameNumber)
+                .thenComparing(File::getName));
+        return new FramePlayer(frames, Shell.getCharSet(range), charsInRow, fps, threshold, cellAspectRatio,
+                linearLight, parallel);
+    }
+
+    /**
+     * Plays all the frames, and prints how long it took and how many cells were redrawn. Frames that can't
+     * be read are skipped.
+     */
+    public void run() {
+        long start = System.nanoTime();
+        long frameNanos = NANOS_IN_SECOND / fps;
+        FrameSequenceMatcher matcher = null;
+        AnsiConsoleWriter console = new AnsiConsoleWriter();
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        Future<Image> nextFrame = reader.submit(() -> Image.fromFile(frames[0].getPath()));
+        long numRedrawnCells = 0;
+        long numCells = 0;
+        int numPlayed = 0;
+        console.clear();
+        try {
+            for (int i = 0 ; i < frames.length ; i++) {
+                Image frame = nextFrame.get();
+                if (i + 1 < frames.length) {
+                    File nextFile = frames[i + 1];
+                    nextFrame = reader.submit(() -> Image.fromFile(nextFile.getPath()));
+                }
+                if (frame == null) {
+                    Logger.getGlobal().severe(FILE_ERROR + frames[i]);
+                    continue;
+                }
+                if (matcher == null) {
+                    int frameCharsInRow = Math.max(Math.min(charsInRow, Shell.getMaxCharsInRow(frame)),
+                            Shell.getMinCharsInRow(frame));
+                    matcher = new FrameSequenceMatcher(Shell.FONT_NAME, charSet, frameCharsInRow, threshold,
+                            parallel);
+                    matcher.setCellAspectRatio(cellAspectRatio);
+                    matcher.setLinearLight(linearLight);
+                }
+                numRedrawnCells += matcher.matchFrame(frame);
+                numCells += (long) matcher.getNumRows() * matcher.getNumCols();
+                drawChangedCells(matcher, console);
+                numPlayed++;
+                waitUntil(start + numPlayed * frameNanos);
+            }
+        } catch (ExecutionException e) {
+            Logger.getGlobal().severe(FILE_ERROR + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            reader.shutdownNow();
+            console.finish(matcher == null ? 0 : matcher.getNumRows());
+        }
+        System.out.printf(STATS_FORMAT, numPlayed, (System.nanoTime() - start) / NANOS_IN_MILLI,
+                numRedrawnCells, numCells);
+    }
+
+    /*
+     * Draws the cells whose characters changed in the last frame of the given matcher. Consecutive changed
+     * cells of the same row are drawn as one run, after a single cursor move.
+     */
+    private static void drawChangedCells(FrameSequenceMatcher matcher, AnsiConsoleWriter console) {
+        int[] changedCells = matcher.getChangedCells();
+        int numCols = matcher.getNumCols();
+        char[][] chars = matcher.getChars();
+        int i = 0;
+        while (i < matcher.getNumChangedCells()) {
+            int row = changedCells[i] / numCols;
+            int firstCol = changedCells[i] % numCols;
+            int endCol = firstCol + 1;  // the column after the last one of the run.
+            i++;
+            while (i < matcher.getNumChangedCells() && changedCells[i] == row * numCols + endCol &&
+                    endCol < numCols) {
+                endCol++;
+                i++;
+            }
+            console.moveTo(row, firstCol);
+            console.writeCells(chars[row], firstCol, endCol);
+        }
+        console.flush();
+    }
+
+    /*
+     * Sleeps until the given value of System.nanoTime, if it is in the future.
+     */
+    private static void waitUntil(long nanoTime) throws InterruptedException {
+        long remaining = nanoTime - System.nanoTime();
+        if (remaining > 0) {
+            TimeUnit.NANOSECONDS.sleep(remaining);
+        }
+    }
+
+    /*
+     * Returns the number of the given frame file: the last sequence of digits in its name, or -1 if there is
+     * none. The frames are sorted by their numbers, so that frame10 comes after frame9.
+     */
+    private static long getFrameNumber(File frame) {
+        String name = frame.getName();
+        int end = name.length();
+        while (end > 0 && !Character.isDigit(name.charAt(end - 1))) {
+            end--;
+        }
+        int start = end;
+        while (start > 0 && Character.isDigit(name.charAt(start - 1))) {
+            start--;
+        }
+        try {
+            return start == end ? -1 : Long.parseLong(name.substring(start, end));
+        } catch (NumberFormatException e) {
+            return -1;  // too many digits for a long.
+        }
+    }
+}
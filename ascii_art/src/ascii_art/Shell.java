@@ -1,14 +1,41 @@
 package ascii_art;
 
 import ascii_art.img_to_char.BrightnessImgCharMatcher;
-import ascii_output.AsciiOutput;
+import ascii_art.img_to_char.DitheringImgCharMatcher;
+import ascii_art.img_to_char.EdgeImgCharMatcher;
+import ascii_output.ColorHtmlAsciiOutput;
 import ascii_output.ConsoleAsciiOutput;
+import ascii_output.DiffConsoleAsciiOutput;
 import ascii_output.HtmlAsciiOutput;
+import ascii_output.StreamingAsciiOutput;
 import image.Image;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
 /**
  * Represents an interface for creating ASCII art.
+ * The ASCII art is rendered to the html file on a background thread, so the prompt stays responsive while a
+ * big image is rendered. A render that is superseded by a newer 'render', 'res', 'add', 'remove', 'match',
+ * 'aspect' or 'light' command is cancelled, even while the brightnesses of the image are being calculated.
+ * A render is streamed to a temporary file, which replaces the html file only when the render completes,
+ * so the html file only ever has complete renders. The commands only change the state of the shell; every
+ * render takes a copy of the state it needs (including the cell aspect ratio and the light mode) and
+ * applies it to its matcher on the render thread. All the renders run on that thread, one after the other,
+ * and the prompt never calls the matchers, so a matcher is never used by two threads at once. The 'add'
+ * and 'remove' commands pass only the changed characters to the charset that the matchers share, on the
+ * render thread too, in order with the renders, so only those characters are looked up and inserted into or
+ * removed from the lookup table of the characters.
  */
 public class Shell {
 
@@ -19,34 +46,49 @@ public class Shell {
     private static final String CMD_REMOVE = "remove";
     private static final String CMD_CHANGE_RESOLUTION = "res";
     private static final String CMD_CONSOLE = "console";
+    private static final String CMD_COLOR = "color";
     private static final String CMD_RENDER = "render";
+    private static final String CMD_MATCH = "match";
+    private static final String CMD_ASPECT = "aspect";
+    private static final String CMD_LIGHT = "light";
 
     // All the commands' possible parameters:
     private static final String PARAM_ALL = "all";
     private static final String PARAM_SPACE = "space";
     private static final String PARAM_UP = "up";
     private static final String PARAM_DOWN = "down";
+    private static final String PARAM_DIFF = "diff";
+    private static final String PARAM_BRIGHTNESS = "brightness";
+    private static final String PARAM_EDGE = "edge";
+    private static final String PARAM_DITHER = "dither";
+    private static final String PARAM_LINEAR = "linear";
+    private static final String PARAM_SRGB = "srgb";
 
     // The start and the end of the full character range:
     private static final char START_CHAR_RANGE = ' ';  // the first legal ASCII character.
     private static final char END_CHAR_RANGE = '~';  // the last legal ASCII character.
 
     // Resolution parameters:
-    private static final int INITIAL_CHARS_IN_ROW = 64;
+    static final int INITIAL_CHARS_IN_ROW = 64;
+    private static final double INITIAL_CELL_ASPECT_RATIO = 1;  // square sub-images.
     private static final int MIN_PIXELS_PER_CHAR = 2;
     private static final int CHANGE_RESOLUTION_COEFFICIENT = 2;
 
     // All the output parameters:
-    private static final String FONT_NAME = "Courier New";
+    static final String FONT_NAME = "Courier New";
     private static final String OUTPUT_FILENAME = "out.html";
-    private static final String INITIAL_CHARS_RANGE = "0-9";  // the initially available characters.
+    private static final String RENDER_FILENAME = "out.html.part";  // the html file while it is rendered.
+    static final String INITIAL_CHARS_RANGE = "0-9";  // the initially available characters.
 
     // All the messages to the user:
     private static final String ASK_FOR_INPUT_MESSAGE = ">>> ";
     private static final String WRONG_INPUT_ERROR = "Wrong input given!";
     private static final String CHANGE_RESOLUTION_MESSAGE = "Width set to ";
+    private static final String CHANGE_ASPECT_MESSAGE = "Cell aspect ratio set to ";
     private static final String MIN_RESOLUTION_ERROR = "You're using the minimal resolution.";
     private static final String MAX_RESOLUTION_ERROR = "You're using the maximal resolution.";
+    private static final String RENDER_ERROR = "Failed to render: ";
+    private static final String RENDER_THREAD_NAME = "render";
 
     // All the user input parameters:
     private static final String USER_INPUT_REGEX = "\\s+";
@@ -62,9 +104,20 @@ public class Shell {
     private final int minCharsInRow;  // the minimal number of characters in row.
     private final int maxCharsInRow;  // the maximal number of characters in row.
     private int charsInRow;  // the current number of characters in row.
-    private final BrightnessImgCharMatcher charMatcher;  // chooses the characters for ASCII art.
+    private final BrightnessImgCharMatcher brightnessMatcher;  // chooses the characters by brightness.
+    private EdgeImgCharMatcher edgeMatcher;  // chooses the characters by shape, null until it is used.
+    // Chooses the characters by brightness with error diffusion, null until it is used. The edge and the
+    // dithering matchers share the caches of the brightness matcher:
+    private DitheringImgCharMatcher ditheringMatcher;
+    private BrightnessImgCharMatcher charMatcher;  // the matcher in use, one of the three above.
+    private double cellAspectRatio;  // the ratio of the height of the sub-image of a character to its width.
+    private boolean linearLight;  // true iff the brightnesses are measured in linear light. False by default.
     private boolean ifConsoleOutput;  // true iff the output is to the console. Is false by default.
-    private AsciiOutput output;  // outputs ASCII art (either to html file or to the console).
+    private ColorHtmlAsciiOutput colorOutput;  // outputs colored ASCII art to html file, null if not in use.
+    private HtmlAsciiOutput htmlOutput;  // outputs ASCII art to the html file, through RENDER_FILENAME.
+    private StreamingAsciiOutput output;  // outputs ASCII art (either htmlOutput or to the console).
+    private final ExecutorService renderExecutor;  // renders the ASCII art in the background, in order.
+    private Future<?> pendingRender;  // the last render that was submitted, null if there was none.
 
     /**
      * Constructor.
@@ -72,18 +125,27 @@ public class Shell {
      */
     public Shell(Image img) {
         this.charSet = new HashSet<>();
-        this.minCharsInRow = Math.max(1, img.getWidth()/img.getHeight());
-        this.maxCharsInRow = img.getWidth() / MIN_PIXELS_PER_CHAR;
+        this.minCharsInRow = getMinCharsInRow(img);
+        this.maxCharsInRow = getMaxCharsInRow(img);
         this.charsInRow = Math.max(Math.min(INITIAL_CHARS_IN_ROW, maxCharsInRow), minCharsInRow);
-        this.charMatcher = new BrightnessImgCharMatcher(img, FONT_NAME);
+        this.brightnessMatcher = new BrightnessImgCharMatcher(img, FONT_NAME);
+        this.charMatcher = brightnessMatcher;
+        this.cellAspectRatio = INITIAL_CELL_ASPECT_RATIO;
+        this.linearLight = false;
         this.ifConsoleOutput = false;
-        this.output = new HtmlAsciiOutput(OUTPUT_FILENAME, FONT_NAME);
+        this.htmlOutput = new HtmlAsciiOutput(RENDER_FILENAME, FONT_NAME);
+        this.output = htmlOutput;
+        this.renderExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, RENDER_THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
         addChars(INITIAL_CHARS_RANGE);
     }
 
     /**
      * Translates the commands obtained from the user to the program functions. Continues to ask for the user
-     * input until the user enters the 'exit' command.
+     * input until the user enters the 'exit' command, and then waits for the last render to be written.
      */
     public void run() {
         Scanner scanner = new Scanner(System.in);
@@ -98,6 +160,32 @@ public class Shell {
             }
             callFunctionByInput(words[0], getParam(words));  // perform function by command.
         } while (!words[0].equals(CMD_EXIT) || words.length != 1);  // continue until the user inputs 'exit'.
+        renderExecutor.shutdown();
+        try {
+            renderExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Calculates the minimal number of characters in row for the given image, such that every row of the
+     * ASCII art has at least one character.
+     * @param img the image to construct ASCII art for.
+     * @return the minimal number of characters in row.
+     */
+    static int getMinCharsInRow(Image img) {
+        return Math.max(1, img.getWidth()/img.getHeight());
+    }
+
+    /**
+     * Calculates the maximal number of characters in row for the given image, such that every character
+     * represents at least MIN_PIXELS_PER_CHAR pixels in width.
+     * @param img the image to construct ASCII art for.
+     * @return the maximal number of characters in row.
+     */
+    static int getMaxCharsInRow(Image img) {
+        return img.getWidth() / MIN_PIXELS_PER_CHAR;
     }
 
     /*
@@ -112,11 +200,11 @@ public class Shell {
     }
 
     /*
-     * Checks if for the commands that don't have a parameter ('exit', 'chars', 'console', 'render') the user
+     * Checks if for the commands that don't have a parameter ('exit', 'chars', 'color', 'render') the user
      * entered a parameter. Returns true iff for these commands user entered a parameter.
      */
     private static boolean checkParameterlessWrongParameter(String command, String param) {
-        return ((command.equals(CMD_EXIT) || command.equals(CMD_SHOW_CHARS) || command.equals(CMD_CONSOLE) ||
+        return ((command.equals(CMD_EXIT) || command.equals(CMD_SHOW_CHARS) || command.equals(CMD_COLOR) ||
                 command.equals(CMD_RENDER)) && param.length() != 0);
     }
 
@@ -143,16 +231,34 @@ public class Shell {
                 showChars();
                 break;
             case CMD_ADD:
+                cancelRender();
                 addChars(param);
                 break;
             case CMD_REMOVE:
+                cancelRender();
                 removeChars(param);
                 break;
             case CMD_CHANGE_RESOLUTION:
+                cancelRender();
                 resChange(param);
                 break;
             case CMD_CONSOLE:
-                changeOutputToConsole();
+                changeOutputToConsole(param);
+                break;
+            case CMD_COLOR:
+                changeOutputToColor();
+                break;
+            case CMD_MATCH:
+                cancelRender();
+                changeMatcher(param);
+                break;
+            case CMD_ASPECT:
+                cancelRender();
+                changeAspectRatio(param);
+                break;
+            case CMD_LIGHT:
+                cancelRender();
+                changeLight(param);
                 break;
             case CMD_RENDER:
                 render();
@@ -211,7 +317,6 @@ public class Shell {
      */
     private static char[] parseCustomCharRange(String param) {
         if (!checkRangeCorrectness(param)) {
-            System.out.println(WRONG_INPUT_ERROR);
             return null;
         }
         if (param.length() == ONE_CHAR_RANGE_LENGTH) {
@@ -220,11 +325,13 @@ public class Shell {
         return new char[] {param.charAt(0), param.charAt(MULTIPLE_CHAR_RANGE_LENGTH - 1)};
     }
 
-    /*
-     * Parses the range that user entered according to the given parameter. If the range is incorrect,
-     * returns null. Returns an array that contains the edge characters of the range otherwise.
+    /**
+     * Parses the range that user entered according to the given parameter. Prints nothing, so that callers
+     * that don't talk to the console can use it; the callers report an incorrect range themselves.
+     * @param param a single character, a range of the form 'a-z', 'all' or 'space'.
+     * @return an array that contains the edge characters of the range, or null if the range is incorrect.
      */
-    private static char[] parseCharRange(String param) {
+    static char[] parseCharRange(String param) {
         switch (param) {
             case PARAM_ALL:  // the range is [' ', '~'].
                 return new char[] {START_CHAR_RANGE, END_CHAR_RANGE};
@@ -235,6 +342,20 @@ public class Shell {
         }
     }
 
+    /**
+     * @param range the edge characters of a range, as returned by parseCharRange.
+     * @return all the characters in the given range, in an increasing order.
+     */
+    static Character[] getCharSet(char[] range) {
+        char start = (char) Math.min(range[0], range[1]);
+        char end = (char) Math.max(range[0], range[1]);
+        Character[] charSet = new Character[end - start + 1];
+        for (char c = start ; c <= end ; c++) {
+            charSet[c - start] = c;
+        }
+        return charSet;
+    }
+
     /*
      * Method for the 'add' command. Adds a single character that is given in the string s or all the
      * characters in the multiple-character-range that is given in the string s to the available characters
@@ -242,10 +363,13 @@ public class Shell {
      */
     private void addChars(String s) {
         char[] range = parseCharRange(s);
-        if(range != null) {
+        if (range == null) {
+            System.out.println(WRONG_INPUT_ERROR);
+        } else {
             for (char c = (char) Math.min(range[0], range[1]) ; c <= Math.max(range[0], range[1]) ; c++) {
                 charSet.add(c);
             }
+            renderExecutor.execute(() -> brightnessMatcher.addChars(range[0], range[1]));
         }
     }
 
@@ -256,10 +380,13 @@ public class Shell {
      */
     private void removeChars(String s) {
         char[] range = parseCharRange(s);
-        if(range != null) {
+        if (range == null) {
+            System.out.println(WRONG_INPUT_ERROR);
+        } else {
             for (char c = (char) Math.min(range[0], range[1]) ; c <= Math.max(range[0], range[1]) ; c++) {
                 charSet.remove(c);
             }
+            renderExecutor.execute(() -> brightnessMatcher.removeChars(range[0], range[1]));
         }
     }
 
@@ -299,25 +426,215 @@ public class Shell {
     }
 
     /*
-     * Method for the 'console' command. Outputs ASCII art to console from now on.
+     * Method for the 'console' command. Outputs ASCII art to console from now on. Without a parameter, every
+     * render prints the whole ASCII art. With the 'diff' parameter, every render redraws only the chars that
+     * changed since the previous render, in place.
      */
-    private void changeOutputToConsole() {
-        if (ifConsoleOutput) {
-            return;
+    private void changeOutputToConsole(String s) {
+        switch (s) {
+            case "":
+                if (!(output instanceof ConsoleAsciiOutput)) {
+                    this.output = new ConsoleAsciiOutput();
+                }
+                break;
+            case PARAM_DIFF:
+                if (!(output instanceof DiffConsoleAsciiOutput)) {
+                    this.output = new DiffConsoleAsciiOutput();
+                }
+                break;
+            default:
+                System.out.println(WRONG_INPUT_ERROR);
+                return;
         }
         this.ifConsoleOutput = true;
-        this.output = new ConsoleAsciiOutput();
+    }
+
+    /*
+     * Method for the 'color' command. Outputs ASCII art to html file in the colors of the image from now on,
+     * unless the output is to the console.
+     */
+    private void changeOutputToColor() {
+        if (colorOutput != null) {
+            return;
+        }
+        this.colorOutput = new ColorHtmlAsciiOutput(RENDER_FILENAME, FONT_NAME, cellAspectRatio);
+    }
+
+    /*
+     * Method for the 'match' command. Chooses the characters for ASCII art from now on either by brightness
+     * ('brightness', the default), by the shapes of the characters and the edges in the image ('edge'), or
+     * by brightness with the errors diffused to the neighboring characters ('dither').
+     */
+    private void changeMatcher(String s) {
+        switch (s) {
+            case PARAM_BRIGHTNESS:
+                charMatcher = brightnessMatcher;
+                break;
+            case PARAM_EDGE:
+                if (edgeMatcher == null) {
+                    edgeMatcher = new EdgeImgCharMatcher(brightnessMatcher);
+                }
+                charMatcher = edgeMatcher;
+                break;
+            case PARAM_DITHER:
+                if (ditheringMatcher == null) {
+                    ditheringMatcher = new DitheringImgCharMatcher(brightnessMatcher);
+                }
+                charMatcher = ditheringMatcher;
+                break;
+            default:
+                System.out.println(WRONG_INPUT_ERROR);
+        }
+    }
+
+    /*
+     * Method for the 'light' command. Measures the brightnesses of the parts of the image from now on either
+     * in linear light ('linear'), which draws the mid-tones with the characters that look as bright as
+     * them, or from the gamma-encoded pixels as they are stored ('srgb', the default).
+     */
+    private void changeLight(String s) {
+        switch (s) {
+            case PARAM_LINEAR:
+                linearLight = true;
+                break;
+            case PARAM_SRGB:
+                linearLight = false;
+                break;
+            default:
+                System.out.println(WRONG_INPUT_ERROR);
+        }
+    }
+
+    /*
+     * Method for the 'aspect' command. Changes the ratio of the height of the sub-image of each character to
+     * its width, e.g. '2' for characters that are twice as tall as they are wide. The html file is drawn in
+     * the same proportions. The console output isn't changed, so the ratio should match the shape of the
+     * characters of the console.
+     */
+    private void changeAspectRatio(String s) {
+        double ratio;
+        try {
+            ratio = Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            ratio = Double.NaN;
+        }
+        if (!(ratio > 0) || Double.isInfinite(ratio)) {
+            System.out.println(WRONG_INPUT_ERROR);
+            return;
+        }
+        cellAspectRatio = ratio;
+        htmlOutput = new HtmlAsciiOutput(RENDER_FILENAME, FONT_NAME, ratio);
+        if (!ifConsoleOutput) {
+            output = htmlOutput;
+        }
+        if (colorOutput != null) {
+            colorOutput = new ColorHtmlAsciiOutput(RENDER_FILENAME, FONT_NAME, ratio);
+        }
+        System.out.println(CHANGE_ASPECT_MESSAGE + ratio);
     }
 
     /*
      * Method for the 'render' command. Outputs ASCII art either to html file or to console (if the user
-     * entered the 'console' command previously).
+     * entered the 'console' command previously). If the user entered the 'color' command previously, the
+     * html file is colored. The previous render is cancelled if it didn't finish yet.
+     * The html file is rendered in the background: the rows are streamed to a temporary file as they are
+     * chosen, which replaces the html file if the render wasn't cancelled. The console is rendered in the
+     * background too, after the previous render stops, but the prompt waits for it, since both are printed
+     * to the console.
      */
     private void render() {
+        cancelRender();
         if (charSet.size() == 0) {  // if there are no available characters for ASCII art, do nothing.
             return;
         }
-        char[][] chosenChars = charMatcher.chooseChars(charsInRow, charSet.toArray(new Character[0]));
-        output.output(chosenChars);
+        // The render uses the current state, even if it is changed by the following commands:
+        BrightnessImgCharMatcher matcher = charMatcher;
+        double ratio = cellAspectRatio;
+        boolean linear = linearLight;
+        int numCharsInRow = charsInRow;
+        if (ifConsoleOutput) {
+            StreamingAsciiOutput renderOutput = output;
+            pendingRender = renderExecutor.submit(() -> {
+                configureMatcher(matcher, ratio, linear);
+                matcher.chooseChars(numCharsInRow, renderOutput);
+            });
+            waitForRender();
+            return;
+        }
+        HtmlAsciiOutput renderOutput = htmlOutput;
+        ColorHtmlAsciiOutput renderColorOutput = colorOutput;
+        pendingRender = renderExecutor.submit(() -> {
+            configureMatcher(matcher, ratio, linear);
+            renderToFile(matcher, numCharsInRow, renderOutput, renderColorOutput);
+        });
+    }
+
+    /*
+     * Applies the cell aspect ratio and the light mode that a render was submitted with to its matcher, on
+     * the render thread, just before the matcher chooses the characters.
+     */
+    private static void configureMatcher(BrightnessImgCharMatcher matcher, double cellAspectRatio,
+                                         boolean linearLight) {
+        matcher.setCellAspectRatio(cellAspectRatio);
+        matcher.setLinearLight(linearLight);
+    }
+
+    /*
+     * Renders ASCII art to the html file, on the render thread. The rows are streamed to the temporary file
+     * through the colored output if there is one, otherwise through the plain output, and the temporary file
+     * replaces the html file unless the render was cancelled or failed meanwhile; otherwise it is deleted.
+     * Nobody waits for the render, so its failure is logged here.
+     */
+    private static void renderToFile(BrightnessImgCharMatcher matcher, int numCharsInRow,
+                                     HtmlAsciiOutput plainOutput, ColorHtmlAsciiOutput colorOutput) {
+        Path renderFile = Paths.get(RENDER_FILENAME);
+        try {
+            HtmlAsciiOutput renderOutput = colorOutput != null ? colorOutput : plainOutput;
+            if (colorOutput != null) {
+                matcher.chooseColoredChars(numCharsInRow, colorOutput);
+            } else {
+                matcher.chooseChars(numCharsInRow, plainOutput);
+            }
+            // Unless a newer command cancelled the render after the brightnesses were calculated:
+            if (!Thread.currentThread().isInterrupted() && !renderOutput.hasFailed()) {
+                Files.move(renderFile, Paths.get(OUTPUT_FILENAME), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                return;
+            }
+        } catch (CancellationException ignored) {
+            // a newer command cancelled the render while the brightnesses were calculated.
+        } catch (IOException | RuntimeException e) {
+            Logger.getGlobal().severe(RENDER_ERROR + e);
+        }
+        try {
+            Files.deleteIfExists(renderFile);
+        } catch (IOException e) {
+            Logger.getGlobal().severe(RENDER_ERROR + e);
+        }
+    }
+
+    /*
+     * Cancels the last render, if it didn't finish yet. The render stops at the next row of the image (or of
+     * the brightnesses it calculates), and its temporary file is deleted, so the html file is left as it was.
+     */
+    private void cancelRender() {
+        if (pendingRender != null) {
+            pendingRender.cancel(true);
+        }
+    }
+
+    /*
+     * Waits for the last render to finish, and logs its failure if it failed.
+     */
+    private void waitForRender() {
+        try {
+            pendingRender.get();
+        } catch (CancellationException ignored) {
+            // the render was superseded.
+        } catch (ExecutionException e) {
+            Logger.getGlobal().severe(RENDER_ERROR + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 }
@@ -1,23 +1,24 @@
 package ascii_art.img_to_char;
 
+import ascii_output.ColorAsciiOutput;
+import ascii_output.StreamingAsciiOutput;
 import image.Image;
-import java.awt.*;
-import java.util.HashMap;
 
 /**
  * Matches ASCII characters to images according to brightness.
  */
 public class BrightnessImgCharMatcher {
 
-    private static final int CHAR_RESOLUTION = 16;
-    private static final int MAX_RGB_VALUE = 255;
-    private static final double RED_COEFFICIENT = 0.2126;
-    private static final double GREEN_COEFFICIENT = 0.7152;
-    private static final double BLUE_COEFFICIENT = 0.0722;
+    static final int CHAR_RESOLUTION = 16;  // the width and height of the rendered characters, in pixels.
+    private static final double SQUARE_ASPECT_RATIO = 1;  // the default, square sub-images.
 
     private final Image image;  // the image to make ASCII art for.
     private final String font;  // the font for the characters in the ASCII art.
-    private final HashMap<Image, Double> cache;  // stores the calculated brightnesses of the image objects.
+    private final boolean parallel;  // true iff the rows of the ASCII art are converted in parallel.
+    private final BrightnessPyramid brightnessPyramid;  // the brightnesses of the sub-images, by size.
+    private final CharBrightnessIndex charIndex;  // the charset of the matcher, by brightness.
+    private double cellAspectRatio = SQUARE_ASPECT_RATIO;  // the ratio of the height of a sub-image to width.
+    private LumaTable lumaTable = LumaTable.SRGB;  // the grey values of the pixels.
 
     /**
      * Constructor.
@@ -25,9 +26,134 @@ public class BrightnessImgCharMatcher {
      * @param font the font name of the characters.
      */
     public BrightnessImgCharMatcher(Image image, String font) {
+        this(image, font, false);
+    }
+
+    /**
+     * Constructor. The brightnesses of the sub-images (and the integral image they are calculated from) are
+     * cached in up to a quarter of the maximal heap size.
+     * @param image the image to match the characters to.
+     * @param font the font name of the characters.
+     * @param parallel true iff the image should be converted in parallel, in bands of rows on the common
+     *                 ForkJoinPool. The result is the same as in the sequential conversion.
+     */
+    public BrightnessImgCharMatcher(Image image, String font, boolean parallel) {
+        this(image, font, parallel, BrightnessPyramid.getDefaultMaxCachedSums());
+    }
+
+    /**
+     * Constructor.
+     * @param image the image to match the characters to.
+     * @param font the font name of the characters.
+     * @param parallel true iff the image should be converted in parallel, in bands of rows on the common
+     *                 ForkJoinPool. The result is the same as in the sequential conversion.
+     * @param maxCachedTiles the maximal total number of sub-images whose brightnesses are cached (a
+     *                       sub-image whose color is cached too counts as four), including the pixels of
+     *                       the integral image the brightnesses are calculated from (one or four each). When
+     *                       it is exceeded, the brightnesses of the least recently used resolutions are
+     *                       evicted, and then the integral image.
+     */
+    public BrightnessImgCharMatcher(Image image, String font, boolean parallel, long maxCachedTiles) {
         this.image = image;
         this.font = font;
-        this.cache = new HashMap<>();
+        this.parallel = parallel;
+        this.brightnessPyramid = new BrightnessPyramid(image, parallel, maxCachedTiles);
+        this.charIndex = new CharBrightnessIndex(font, CHAR_RESOLUTION);
+    }
+
+    /**
+     * Constructor of a matcher of the same image, font and mode as the given matcher, that shares its
+     * caches: the brightnesses of the sub-images (with their bound) and the index of the characters. So
+     * switching between matchers of the same image doesn't calculate the brightnesses again, and doesn't
+     * take more memory. The sub-image shape and the light mode start as those of the given matcher. The
+     * matchers that share the caches must not be used by two threads at once.
+     * @param other the matcher to share the caches with.
+     */
+    protected BrightnessImgCharMatcher(BrightnessImgCharMatcher other) {
+        this.image = other.image;
+        this.font = other.font;
+        this.parallel = other.parallel;
+        this.brightnessPyramid = other.brightnessPyramid;
+        this.charIndex = other.charIndex;
+        this.cellAspectRatio = other.cellAspectRatio;
+        this.lumaTable = other.lumaTable;
+    }
+
+    /**
+     * Constructor of a matcher of another image, in the same font and mode as the given matcher, that
+     * shares its index of the characters, so that the glyphs aren't measured and the lookup table isn't
+     * built again. Is meant for sequences of images of the same characters. The brightnesses of the
+     * sub-images of the image are cached in their own pyramid, in up to a quarter of the maximal heap size.
+     * The sub-image shape and the light mode start as those of the given matcher. The matchers that share
+     * the index must not be used by two threads at once.
+     * @param image the image to match the characters to.
+     * @param other the matcher to share the index of the characters with.
+     */
+    BrightnessImgCharMatcher(Image image, BrightnessImgCharMatcher other) {
+        this.image = image;
+        this.font = other.font;
+        this.parallel = other.parallel;
+        this.brightnessPyramid = new BrightnessPyramid(image, parallel,
+                BrightnessPyramid.getDefaultMaxCachedSums());
+        this.charIndex = other.charIndex;
+        this.cellAspectRatio = other.cellAspectRatio;
+        this.lumaTable = other.lumaTable;
+    }
+
+    /**
+     * Drops the glyphs and the glyph brightnesses that the process cached, so that the next matcher renders
+     * the glyphs again, or loads their brightnesses from the glyph store file if it exists. Is meant for
+     * benchmarks that measure a conversion from scratch.
+     */
+    public static void clearGlyphCaches() {
+        CharRenderer.clearCache();
+        GlyphBrightnessStore.forgetOpenStores();
+    }
+
+    /**
+     * @return the number of conversions whose sub-image brightnesses were found in the cache.
+     */
+    public long getCacheHits() {
+        return brightnessPyramid.getHits();
+    }
+
+    /**
+     * @return the number of conversions whose sub-image brightnesses had to be calculated.
+     */
+    public long getCacheMisses() {
+        return brightnessPyramid.getMisses();
+    }
+
+    /**
+     * @return the number of resolutions whose sub-image brightnesses were evicted from the cache.
+     */
+    public long getCacheEvictions() {
+        return brightnessPyramid.getEvictions();
+    }
+
+    /**
+     * Sets the shape of the sub-images of the characters in the following conversions. A character on the
+     * screen is usually taller than it is wide, so sub-images of the same shape draw the image in its right
+     * proportions with fewer characters than square sub-images would need. The height of a sub-image is
+     * rounded to whole pixels, and is at most the height of the image.
+     * @param cellAspectRatio the ratio of the height of each sub-image to its width. Must be positive. The
+     *                        default is 1 (square sub-images).
+     */
+    public void setCellAspectRatio(double cellAspectRatio) {
+        this.cellAspectRatio = cellAspectRatio;
+    }
+
+    /**
+     * Sets whether the brightnesses of the sub-images are measured in linear light in the following
+     * conversions. By default the channel values of the pixels are weighed as they are stored, which are
+     * gamma-encoded, so mid-tones count as darker than the light they give. In linear light the values are
+     * decoded first, so the brightness of a sub-image is proportional to its luminance, like the brightness
+     * of a character is proportional to the part of it that is covered. Changing it drops the cached
+     * brightnesses of the sub-images.
+     * @param linearLight true iff the brightnesses should be measured in linear light.
+     */
+    public void setLinearLight(boolean linearLight) {
+        this.lumaTable = linearLight ? LumaTable.LINEAR : LumaTable.SRGB;
     }
 
     /**
@@ -39,160 +165,216 @@ public class BrightnessImgCharMatcher {
      * @return the converted to ASCII image (character array that represents the given image)
      */
     public char[][] chooseChars(int numCharsInRow, Character[] charSet) {
-        Character[] newCharSet = new Character[charSet.length];  // copy the input so that not to change it.
-        System.arraycopy(charSet, 0, newCharSet, 0, charSet.length);
-        double[] charBrightness = getCharBrightness(newCharSet);
-        sortCharsByBrightness(newCharSet, charBrightness);
-        linearStretching(charBrightness);
-        return convertImageToAscii(charBrightness, numCharsInRow, newCharSet);
+        BrightnessLevel level = getLevel(numCharsInRow, false);
+        return convertImageToAscii(getRowConverter(getCharTable(charSet), level), level);
     }
 
-    /*
-     * Calculates the brightness of one character. The brightness of a character is the number of white
-     * pixels divided by the total number of pixels in the character image.
-     */
-    private double getOneCharBrightness(Character character) {
-        boolean[][] charImage = CharRenderer.getImg(character, CHAR_RESOLUTION, font);
-        int numPixels = 0;
-        int numWhitePixels = 0;
-        for (boolean[] row : charImage) {
-            for (boolean pixel : row) {
-                if (pixel) {
-                    numWhitePixels++;
-                }
-                numPixels++;
-            }
+    /**
+     * Adds the characters of the given range to the charset of the matcher, which is shared with the
+     * matchers that were built from it, and is used by the conversions that aren't given a charSet. Only
+     * the added characters are looked up and inserted into the lookup table, in O(log n) each, plus the
+     * update of the buckets of the table they affect. The order of the range doesn't matter.
+     * @param first the character at one end of the range.
+     * @param last the character at the other end of the range.
+     */
+    public void addChars(char first, char last) {
+        for (int c = Math.min(first, last) ; c <= Math.max(first, last) ; c++) {
+            charIndex.add((char) c);
         }
-        return ((double) numWhitePixels) / numPixels;
+        charIndex.saveGlyphs();
     }
 
-    /*
-     * Returns an array of all the brightnesses of all the characters in the given array. The brightness of
-     * a character at the index i in the given array is at the index i in the returned array.
+    /**
+     * Removes the characters of the given range from the charset of the matcher, like addChars adds them.
+     * @param first the character at one end of the range.
+     * @param last the character at the other end of the range.
      */
-    private double[] getCharBrightness(Character[] charSet) {
-        double[] charBrightness = new double[charSet.length];
-        for (int i = 0 ; i < charSet.length ; i++) {
-            charBrightness[i] = getOneCharBrightness(charSet[i]);
+    public void removeChars(char first, char last) {
+        for (int c = Math.min(first, last) ; c <= Math.max(first, last) ; c++) {
+            charIndex.remove((char) c);
         }
-        return charBrightness;
     }
 
-    /*
-     * Swaps the values in the given array of brightnesses at the indexes i and i + 1.
+    /**
+     * Returns the converter of the rows of tiles of the given level to characters of the given table.
+     * Chooses for each tile the closest character by brightness. Subclasses may choose the characters
+     * differently. The converter may be called from several threads at once, for different rows.
+     * @param charTable the lookup table of the possible characters.
+     * @param level the brightnesses of the tiles to convert.
+     * @return the converter of the rows of the given level.
      */
-    private static void swapBrightness(double[] charBrightness, int i) {
-        double tempBrightness = charBrightness[i];
-        charBrightness[i] = charBrightness[i + 1];
-        charBrightness[i + 1] = tempBrightness;
+    RowConverter getRowConverter(CharLookupTable charTable, BrightnessLevel level) {
+        return (rowIndex, row) -> convertRow(charTable, level, rowIndex, row);
     }
 
-    /*
-     * Swaps the values in the given array of characters at the indexes i and i + 1.
+    /**
+     * Returns the pyramid level of the sub-images for the given number of characters in row, in the current
+     * shape of the sub-images and with the current grey values of the pixels.
+     * @param numCharsInRow the number of characters in each row.
+     * @param withColor true iff the average colors of the sub-images are needed too.
+     * @return the brightnesses of the sub-images.
      */
-    private static void swapChars(Character[] charSet, int i) {
-        Character tempChar = charSet[i];
-        charSet[i] = charSet[i + 1];
-        charSet[i + 1] = tempChar;
+    BrightnessLevel getLevel(int numCharsInRow, boolean withColor) {
+        brightnessPyramid.setLumaTable(lumaTable);
+        int tileWidth = image.getWidth() / numCharsInRow;
+        long tileHeight = Math.max(1, Math.min(image.getHeight(), Math.round(tileWidth * cellAspectRatio)));
+        return brightnessPyramid.getLevel(tileWidth, (int) tileHeight, withColor);
     }
 
-    /*
-     * Sorts the array of characters (charSet) by their brightnesses (charBrightness) with the bubble sort
-     * algorithm. When we perform a swap in the array of characters, we also perform a corresponding swap
-     * in the array of brightnesses, so that a character and its brightness would be at the same index.
-     */
-    private static void sortCharsByBrightness(Character[] charSet, double[] charBrightness) {
-        for (int i = 0 ; i < charSet.length - 1 ; i++) {
-            for (int j = 0 ; j < charSet.length - i - 1 ; j++) {
-                if (charBrightness[j] > charBrightness[j + 1]) {
-                    swapBrightness(charBrightness, j);
-                    swapChars(charSet, j);
-                }
-            }
-        }
+    /**
+     * @return the font name of the characters.
+     */
+    String getFont() {
+        return font;
     }
 
-    /*
-     * Performs linear stretching on the array of brightnesses by the given formula. If linear stretching
-     * can't be performed (the minimal brightness in the array equals the maximal), we make all the
-     * brightnesses equal to zero.
-     */
-    private static void linearStretching(double[] charBrightness) {
-        double minBrightness = charBrightness[0];
-        double maxBrightness = charBrightness[charBrightness.length - 1];
-        for (int i = 0; i < charBrightness.length ; i++) {
-            if (minBrightness == maxBrightness) {
-                charBrightness[i] = 0;
-            }
-            charBrightness[i] = (charBrightness[i] - minBrightness) / (maxBrightness - minBrightness);
-        }
+    /**
+     * @return the brightnesses of the sub-images of the image, by size.
+     */
+    BrightnessPyramid getBrightnessPyramid() {
+        return brightnessPyramid;
     }
 
-    /*
-     * Calculates the grey value of the colored pixel by the given formula.
+    /**
+     * Chooses characters for the given image according to brightness, and streams them to the given output
+     * row by row, as soon as each row is chosen. The full character array is never built. If the calling
+     * thread is interrupted, no more rows are chosen after the current one, and the output is finished with
+     * the rows that were chosen so far; the interrupt status of the thread is kept. If it is interrupted
+     * while the brightnesses of the sub-images are calculated, which is checked row by row, a
+     * CancellationException is thrown before the output is started.
+     * @param numCharsInRow the number of characters in each row of the ASCII art that represents the given
+     *                      image. The bigger it is, the higher the resolution is.
+     * @param charSet the list of the possible characters in the ASCII art that represents the given image.
+     *                It becomes the charset of the matcher.
+     * @param output the output to stream the rows of the ASCII art to.
+     */
+    public void chooseChars(int numCharsInRow, Character[] charSet, StreamingAsciiOutput output) {
+        streamChars(numCharsInRow, getCharTable(charSet), output);
+    }
+
+    /**
+     * Chooses characters of the charset of the matcher (see addChars) for the given image, and streams them
+     * to the given output, like chooseChars with a charSet does. The charset must not be empty.
+     * @param numCharsInRow the number of characters in each row of the ASCII art that represents the given
+     *                      image. The bigger it is, the higher the resolution is.
+     * @param output the output to stream the rows of the ASCII art to.
+     */
+    public void chooseChars(int numCharsInRow, StreamingAsciiOutput output) {
+        streamChars(numCharsInRow, charIndex.getCharTable(), output);
+    }
+
+    /**
+     * Chooses characters for the given image according to brightness, together with the average color of
+     * the sub-image of each character, and streams them to the given output row by row. The colors are
+     * summed in the same pass over the image as the brightnesses. If the calling thread is interrupted, the
+     * output is finished early, like in chooseChars.
+     * @param numCharsInRow the number of characters in each row of the ASCII art that represents the given
+     *                      image. The bigger it is, the higher the resolution is.
+     * @param charSet the list of the possible characters in the ASCII art that represents the given image.
+     *                It becomes the charset of the matcher.
+     * @param output the output to stream the rows of the ASCII art and their colors to.
      */
-    private double getGreyPixel(Color colorPixel) {
-        return (colorPixel.getRed() * RED_COEFFICIENT + colorPixel.getGreen() * GREEN_COEFFICIENT +
-                colorPixel.getBlue() * BLUE_COEFFICIENT);
+    public void chooseColoredChars(int numCharsInRow, Character[] charSet, ColorAsciiOutput output) {
+        streamColoredChars(numCharsInRow, getCharTable(charSet), output);
+    }
+
+    /**
+     * Chooses characters of the charset of the matcher (see addChars) for the given image, together with
+     * the average colors of their sub-images, and streams them to the given output, like chooseColoredChars
+     * with a charSet does. The charset must not be empty.
+     * @param numCharsInRow the number of characters in each row of the ASCII art that represents the given
+     *                      image. The bigger it is, the higher the resolution is.
+     * @param output the output to stream the rows of the ASCII art and their colors to.
+     */
+    public void chooseColoredChars(int numCharsInRow, ColorAsciiOutput output) {
+        streamColoredChars(numCharsInRow, charIndex.getCharTable(), output);
     }
 
     /*
-     * Gets the brightness of the given image. If the cache contains the given image, returns its brightness.
-     * Otherwise, calculates its brightness by summing up the brightnesses of all the pixels in it and
-     * dividing by the total number of pixels in the image, and then puts the image with its brightness
-     * into the cache.
-     */
-    private double getImageBrightness(Image image) {
-        if (cache.containsKey(image)) {
-            return cache.get(image);
-        }
-        int numPixels = 0;
-        double sumBrightness = 0;
-        for (Color colorPixel : image.pixels()) {
-            sumBrightness += (getGreyPixel(colorPixel) / MAX_RGB_VALUE);
-            numPixels++;
+     * Chooses characters of the given table for the given image, and streams them to the given output row
+     * by row.
+     */
+    private void streamChars(int numCharsInRow, CharLookupTable charTable, StreamingAsciiOutput output) {
+        BrightnessLevel level = getLevel(numCharsInRow, false);
+        RowConverter rowConverter = getRowConverter(charTable, level);
+        char[] row = new char[level.getNumCols()];  // reused for all the rows.
+        output.start(row.length);
+        for (int rowIndex = 0 ; rowIndex < level.getNumRows() && !Thread.currentThread().isInterrupted() ;
+             rowIndex++) {
+            rowConverter.convertRow(rowIndex, row);
+            output.outputRow(row);
         }
-        double imageBrightness = sumBrightness / numPixels;
-        cache.put(image, imageBrightness);
-        return imageBrightness;
+        output.finish();
     }
 
     /*
-     * Chooses from the given array of characters the closest character by its brightness to the given
-     * sub-image brightness.
-     */
-    private static char getCharForSubImage(Character[] charSet, double[] charBrightness,
-                                    double subImageBrightness) {
-        char bestChar = charSet[0];
-        double bestDifference = Math.abs(subImageBrightness - charBrightness[0]);
-        for (int i = 0; i < charBrightness.length ; i++) {
-            if (Math.abs(subImageBrightness - charBrightness[i]) < bestDifference) {
-                bestChar = charSet[i];
-                bestDifference = Math.abs(subImageBrightness - charBrightness[i]);
+     * Chooses characters of the given table for the given image, together with the average colors of their
+     * sub-images, and streams them to the given output row by row.
+     */
+    private void streamColoredChars(int numCharsInRow, CharLookupTable charTable, ColorAsciiOutput output) {
+        BrightnessLevel level = getLevel(numCharsInRow, true);
+        RowConverter rowConverter = getRowConverter(charTable, level);
+        char[] row = new char[level.getNumCols()];  // reused for all the rows.
+        int[] colors = new int[level.getNumCols()];  // reused for all the rows.
+        output.start(row.length);
+        for (int rowIndex = 0 ; rowIndex < level.getNumRows() && !Thread.currentThread().isInterrupted() ;
+             rowIndex++) {
+            rowConverter.convertRow(rowIndex, row);
+            for (int col = 0 ; col < colors.length ; col++) {
+                colors[col] = level.getColor(rowIndex, col);
             }
+            output.outputRow(row, colors);
         }
-        return bestChar;
+        output.finish();
+    }
+
+    /**
+     * Returns the lookup table for the given charSet. The persistent index of the characters is updated
+     * with the characters that were added to or removed from the charSet since the previous call, and the
+     * table is built again only if any character was.
+     * @param charSet the list of the possible characters.
+     * @return the lookup table of the closest characters by brightness.
+     */
+    CharLookupTable getCharTable(Character[] charSet) {
+        charIndex.update(charSet);
+        return charIndex.getCharTable();
     }
 
     /*
      * Converts the image stored in the object to an array of characters by dividing the image into
      * sub-images and for each sub-image choosing the closest character by its brightness to the brightness
-     * the sub-image.
-     */
-    private char[][] convertImageToAscii(double[] charBrightness, int numCharsInRow, Character[] charSet) {
-        int pixels = image.getWidth() / numCharsInRow;
-        char[][] asciiArt = new char[image.getHeight() / pixels][image.getWidth() / pixels];
-        int row = 0;
-        int col = 0;
-        for (Image subImage : image.squareSubImagesOfSize(pixels)) {
-            double subImageBrightness = getImageBrightness(subImage);  // get the sub-image brightness.
-            // Choose the best character for the sub-image:
-            asciiArt[row][col] = getCharForSubImage(charSet, charBrightness, subImageBrightness);
-            if (++col == asciiArt[row].length) {  // increment the column index.
-                row++;  // go to the start of the next row if the column index is out of borders.
-                col = 0;
-            }
-        }
+     * the sub-image. The brightnesses of the sub-images are taken from the given pyramid level of their
+     * size, and the characters are chosen by the given converter.
+     */
+    private char[][] convertImageToAscii(RowConverter rowConverter, BrightnessLevel level) {
+        char[][] asciiArt = new char[level.getNumRows()][level.getNumCols()];
+        // Each row is written only by the task that converts it, so the rows can be converted in parallel:
+        ParallelRows.forEachRow(asciiArt.length, parallel,
+                row -> rowConverter.convertRow(row, asciiArt[row]));
         return asciiArt;
     }
+
+    /*
+     * Converts one row of sub-images of the given level to characters, by choosing for each sub-image the
+     * closest character by brightness. The characters are written to the given row array.
+     */
+    private static void convertRow(CharLookupTable charTable, BrightnessLevel level, int rowIndex,
+                                   char[] row) {
+        for (int col = 0 ; col < row.length ; col++) {
+            row[col] = charTable.getChar(level.getBrightness(rowIndex, col));
+        }
+    }
+
+    /**
+     * Converts one row of tiles of a level to characters.
+     */
+    @FunctionalInterface
+    interface RowConverter {
+        /**
+         * Converts the row of tiles at the given index to characters.
+         * @param rowIndex the index of the row of tiles.
+         * @param row the array to write the characters of the row to.
+         */
+        void convertRow(int rowIndex, char[] row);
+    }
 }
@@ -0,0 +1,209 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+import image.Pixels;
+import java.util.concurrent.CancellationException;
+
+/**
+ * A summed-area table (integral image) of the grey values of an image. It is built once per image in a
+ * single pass over its pixels, and afterwards answers the average brightness of any rectangle in the image
+ * with four lookups, regardless of the size of the rectangle.
+ * The grey values are summed in fixed point (the coefficients of the grey formula are scaled to integers),
+ * so that the sums are exact and don't depend on the order of the additions. The grey value of every pixel
+ * is looked up in a LumaTable, either of the gamma-encoded channel values or of their linear light.
+ * Optionally, the table also sums the red, green and blue channels of the pixels in the same pass, each in
+ * its own plane, so that it answers the average color of any rectangle as well.
+ */
+class BrightnessIntegralImage {
+
+    // The planes of the table, and the number of planes with and without the color channels:
+    static final int GREY_PLANE = 0;
+    static final int RED_PLANE = 1;
+    static final int GREEN_PLANE = 2;
+    static final int BLUE_PLANE = 3;
+    static final int NUM_GREY_PLANES = 1;
+    static final int NUM_COLOR_PLANES = 4;
+
+    private static final double GREY_SCALE = 10000;  // the sum of the scaled coefficients of LumaTable.
+    private static final int MAX_RGB_VALUE = 255;
+    private static final String SIZE_ERROR = "The image is too large for an integral image: ";
+
+    private final int width;  // the width of the image.
+    private final int height;  // the height of the image.
+    // planes[p][y * (width + 1) + x] is the sum of the values of the plane p of all the pixels above and to
+    // the left of the pixel (x, y). The first row and the first column are zeros.
+    private final long[][] planes;
+
+    /**
+     * Constructor. Builds the table for the given image.
+     * @param image the image to build the table for. canBuild(image) must be true.
+     * @param withColor true iff the color channels should be summed too.
+     * @param lumaTable the grey values of the pixels.
+     * @throws IllegalArgumentException if a plane of the table of the image doesn't fit in an array.
+     * @throws CancellationException if the calling thread is interrupted. It is checked before every row of
+     *                               the image.
+     */
+    BrightnessIntegralImage(Image image, boolean withColor, LumaTable lumaTable) {
+        if (!canBuild(image)) {
+            throw new IllegalArgumentException(SIZE_ERROR + image.getWidth() + "x" + image.getHeight());
+        }
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        int numSumsPerPlane = (int) getNumSums(image, false);
+        this.planes = new long[withColor ? NUM_COLOR_PLANES : NUM_GREY_PLANES][numSumsPerPlane];
+        int stride = width + 1;
+        Thread caller = Thread.currentThread();
+        // First store the values of every pixel in its entries, then turn the entries into sums in place:
+        for (int row = 0 ; row < height ; row++) {
+            ParallelRows.checkInterrupted(caller);
+            image.forEachPixel(0, row, width, 1, (x, y, rgb) -> {
+                for (int plane = 0 ; plane < planes.length ; plane++) {
+                    planes[plane][(y + 1) * stride + x + 1] = getPlaneValue(plane, rgb, lumaTable);
+                }
+            });
+        }
+        for (long[] sums : planes) {
+            for (int y = 1 ; y <= height ; y++) {
+                ParallelRows.checkInterrupted(caller);
+                long rowSum = 0;
+                int rowStart = y * stride;
+                for (int x = 1 ; x <= width ; x++) {
+                    rowSum += sums[rowStart + x];
+                    sums[rowStart + x] = sums[rowStart - stride + x] + rowSum;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of planes in the table: NUM_COLOR_PLANES if the color channels are summed,
+     * NUM_GREY_PLANES otherwise.
+     */
+    int getNumPlanes() {
+        return planes.length;
+    }
+
+    /**
+     * @return the number of sums in the table: one per pixel (and one per pixel of the zero first row and
+     * column) in each plane.
+     */
+    long getNumSums() {
+        return (long) planes.length * planes[GREY_PLANE].length;
+    }
+
+    /**
+     * Calculates the sum of the scaled grey values of the pixels in the given rectangle of the image.
+     * @param x the column of the upper left corner of the rectangle.
+     * @param y the row of the upper left corner of the rectangle.
+     * @param rectWidth the width of the rectangle, in pixels.
+     * @param rectHeight the height of the rectangle, in pixels.
+     * @return the sum of the scaled grey values of the rectangle.
+     */
+    long getSum(int x, int y, int rectWidth, int rectHeight) {
+        return getSum(GREY_PLANE, x, y, rectWidth, rectHeight);
+    }
+
+    /**
+     * Calculates the sum of the values of one plane of the pixels in the given rectangle of the image.
+     * @param plane the plane: GREY_PLANE, or one of the color planes if the table sums them.
+     * @param x the column of the upper left corner of the rectangle.
+     * @param y the row of the upper left corner of the rectangle.
+     * @param rectWidth the width of the rectangle, in pixels.
+     * @param rectHeight the height of the rectangle, in pixels.
+     * @return the sum of the values of the plane in the rectangle.
+     */
+    long getSum(int plane, int x, int y, int rectWidth, int rectHeight) {
+        long[] sums = planes[plane];
+        int stride = width + 1;
+        int top = y * stride;
+        int bottom = (y + rectHeight) * stride;
+        return sums[bottom + x + rectWidth] - sums[bottom + x] - sums[top + x + rectWidth] + sums[top + x];
+    }
+
+    /**
+     * Calculates the average brightness of the pixels in the given rectangle of the image. The brightness of
+     * a pixel is its grey value divided by the maximal RGB value.
+     * @param x the column of the upper left corner of the rectangle.
+     * @param y the row of the upper left corner of the rectangle.
+     * @param rectWidth the width of the rectangle, in pixels.
+     * @param rectHeight the height of the rectangle, in pixels.
+     * @return the average brightness of the rectangle, in the range [0, 1].
+     */
+    double getAverageBrightness(int x, int y, int rectWidth, int rectHeight) {
+        return toBrightness(getSum(x, y, rectWidth, rectHeight), (long) rectWidth * rectHeight);
+    }
+
+    /**
+     * Converts a sum of scaled grey values to the average brightness of the pixels it was summed over.
+     * @param sum the sum of the scaled grey values.
+     * @param numPixels the number of pixels that were summed.
+     * @return the average brightness, in the range [0, 1].
+     */
+    static double toBrightness(long sum, long numPixels) {
+        return sum / (GREY_SCALE * MAX_RGB_VALUE * numPixels);
+    }
+
+    /**
+     * Converts the sums of the color planes to the average color of the pixels they were summed over.
+     * @param redSum the sum of the red plane.
+     * @param greenSum the sum of the green plane.
+     * @param blueSum the sum of the blue plane.
+     * @param numPixels the number of pixels that were summed.
+     * @return the average color, in the default RGB color model (without alpha).
+     */
+    static int toColor(long redSum, long greenSum, long blueSum, long numPixels) {
+        return Pixels.toRGB((int) (redSum / numPixels), (int) (greenSum / numPixels),
+                (int) (blueSum / numPixels));
+    }
+
+    /**
+     * @param image an image.
+     * @return true iff the table can be built for the given image: iff each plane of its table, of
+     * (width + 1) * (height + 1) sums, fits in an array.
+     */
+    static boolean canBuild(Image image) {
+        return getNumSums(image, false) <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * Calculates the number of sums the table would have for the given image.
+     * @param image the image.
+     * @param withColor true iff the color channels would be summed too.
+     * @return the number of sums in the table for the image.
+     */
+    static long getNumSums(Image image, boolean withColor) {
+        return (image.getWidth() + 1L) * (image.getHeight() + 1L) *
+                (withColor ? NUM_COLOR_PLANES : NUM_GREY_PLANES);
+    }
+
+    /**
+     * Calculates the number of bytes the table would take for the given image.
+     * @param image the image.
+     * @param withColor true iff the color channels would be summed too.
+     * @return the size of the table for the image, in bytes.
+     */
+    static long getSizeInBytes(Image image, boolean withColor) {
+        return getNumSums(image, withColor) * Long.BYTES;
+    }
+
+    /**
+     * Calculates the value of the pixel, given in the default ARGB color model, in the given plane: its
+     * grey value scaled by GREY_SCALE, or the value of one of its color channels.
+     * @param plane the plane.
+     * @param rgb the pixel in the default ARGB color model.
+     * @param lumaTable the grey values of the pixels.
+     * @return the value of the pixel in the plane.
+     */
+    static long getPlaneValue(int plane, int rgb, LumaTable lumaTable) {
+        switch (plane) {
+            case RED_PLANE:
+                return Pixels.getRed(rgb);
+            case GREEN_PLANE:
+                return Pixels.getGreen(rgb);
+            case BLUE_PLANE:
+                return Pixels.getBlue(rgb);
+            default:
+                return lumaTable.getScaledGrey(rgb);
+        }
+    }
+}
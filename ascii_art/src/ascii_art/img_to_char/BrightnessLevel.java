@@ -0,0 +1,120 @@
+package ascii_art.img_to_char;
+
+/**
+ * One level of a brightness pyramid: the brightnesses of all the tiles of an image, for one tile size, and
+ * optionally their average colors.
+ * The sums of the scaled grey values (and of the color channels) of the tiles are stored, and not their
+ * averages, so that a level derived from another level is exactly equal to a level calculated from the
+ * pixels.
+ */
+class BrightnessLevel {
+
+    // planes[p][row][col] is the sum of the values of the plane p (see BrightnessIntegralImage) of a tile:
+    private final long[][][] planes;
+    private final int tileWidth;  // the width of each tile, in pixels.
+    private final int tileHeight;  // the height of each tile, in pixels.
+
+    /**
+     * Constructor.
+     * @param planes the sums of the values of each plane of the tiles, by plane, row and column. Either the
+     *               grey plane only, or the grey plane and the color planes.
+     * @param tileWidth the width of each tile, in pixels.
+     * @param tileHeight the height of each tile, in pixels.
+     */
+    BrightnessLevel(long[][][] planes, int tileWidth, int tileHeight) {
+        this.planes = planes;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+    }
+
+    /**
+     * @return the number of planes in the level.
+     */
+    int getNumPlanes() {
+        return planes.length;
+    }
+
+    /**
+     * @return true iff the level has the average colors of the tiles.
+     */
+    boolean hasColor() {
+        return planes.length == BrightnessIntegralImage.NUM_COLOR_PLANES;
+    }
+
+    /**
+     * @return the number of rows of tiles in the level.
+     */
+    int getNumRows() {
+        return planes[BrightnessIntegralImage.GREY_PLANE].length;
+    }
+
+    /**
+     * @return the number of columns of tiles in the level.
+     */
+    int getNumCols() {
+        return getNumRows() == 0 ? 0 : planes[BrightnessIntegralImage.GREY_PLANE][0].length;
+    }
+
+    /**
+     * @return the width of each tile, in pixels.
+     */
+    int getTileWidth() {
+        return tileWidth;
+    }
+
+    /**
+     * @return the height of each tile, in pixels.
+     */
+    int getTileHeight() {
+        return tileHeight;
+    }
+
+    /**
+     * @return the number of pixels in each tile. It is a long, since a tile of a huge image (such as a
+     * memory-mapped one) at a low resolution may have more pixels than an int holds.
+     */
+    long getTilePixels() {
+        return (long) tileWidth * tileHeight;
+    }
+
+    /**
+     * @param plane the plane.
+     * @param row the row of the tile.
+     * @param col the column of the tile.
+     * @return the sum of the values of the plane in the tile.
+     */
+    long getSum(int plane, int row, int col) {
+        return planes[plane][row][col];
+    }
+
+    /**
+     * @param plane the plane.
+     * @param row the row of tiles.
+     * @return the sums of the values of the plane in the tiles of the row, by column. Must not be modified.
+     */
+    long[] getRowSums(int plane, int row) {
+        return planes[plane][row];
+    }
+
+    /**
+     * @param row the row of the tile.
+     * @param col the column of the tile.
+     * @return the average brightness of the tile, in the range [0, 1].
+     */
+    double getBrightness(int row, int col) {
+        return BrightnessIntegralImage.toBrightness(planes[BrightnessIntegralImage.GREY_PLANE][row][col],
+                getTilePixels());
+    }
+
+    /**
+     * Must be called only if the level has colors.
+     * @param row the row of the tile.
+     * @param col the column of the tile.
+     * @return the average color of the tile, in the default RGB color model (without alpha).
+     */
+    int getColor(int row, int col) {
+        return BrightnessIntegralImage.toColor(planes[BrightnessIntegralImage.RED_PLANE][row][col],
+                planes[BrightnessIntegralImage.GREEN_PLANE][row][col],
+                planes[BrightnessIntegralImage.BLUE_PLANE][row][col], getTilePixels());
+    }
+}
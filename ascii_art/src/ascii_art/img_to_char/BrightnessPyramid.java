@@ -0,0 +1,310 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+/**
+ * A mip-map style pyramid of the tile brightnesses of an image. Each level holds the brightnesses of all
+ * the tiles of one size (width and height, so the tiles may be rectangles), and optionally their average
+ * colors. The levels are built lazily, when first requested, and kept in a bounded cache: the cached levels
+ * and the integral image together hold at most the given maximal number of sums. When a new level or
+ * integral image exceeds it, the least recently used levels are evicted, and then, if the new level still
+ * doesn't fit, the integral image (a level that is bigger than the maximum by itself is not cached at all).
+ * So the memory the pyramid holds is bounded by the maximum, in sums of 8 bytes. The hits, misses and
+ * evictions of the cache are counted.
+ * A level whose tiles are twice as wide and twice as high as the tiles of an existing level is derived
+ * from it by summing every 2x2 block of tiles, without reading the pixels again. Any other level is
+ * calculated from the integral image of the image, or, if the integral image wouldn't fit in the cache by
+ * itself or comfortably in the heap (e.g. for a memory-mapped image), directly from the pixels in a single
+ * row-by-row pass.
+ * A level with colors is built only when colors are requested; it replaces the level without colors of the
+ * same size, and serves the requests without colors too. Likewise, the integral image sums the color
+ * channels only once colors are requested.
+ * The grey values of the pixels are taken from a LumaTable. When the table is changed, all the levels and
+ * the integral image are dropped, since they were summed from the grey values of the previous table.
+ * In the parallel mode, the rows of a level are calculated in parallel. The levels themselves are built
+ * and stored by the calling thread only.
+ */
+class BrightnessPyramid {
+
+    private static final int LEVEL_SCALE = 2;  // the ratio between the tile sizes of adjacent levels.
+    // The integral image is used only if it takes at most this fraction of the maximal heap size, and the
+    // default maximum of the cache is this fraction of it too:
+    private static final double MAX_HEAP_FRACTION = 0.25;
+    private static final int INITIAL_CACHE_CAPACITY = 16;
+    private static final float CACHE_LOAD_FACTOR = 0.75f;
+
+    private final Image image;  // the image the pyramid is built for.
+    private final boolean parallel;  // true iff the rows of each level are calculated in parallel.
+    // The cached levels, by the key of their tile size (see getKey), from the least recently used to the
+    // most recently used:
+    private final Map<Long, BrightnessLevel> levels;
+    private final long maxCachedSums;  // the maximal total number of sums cached, in levels and integral.
+    private long numCachedSums;  // the total number of sums in the cached levels and the integral image.
+    private long hits;  // the number of requests for a level that was cached.
+    private long misses;  // the number of requests for a level that had to be built.
+    private long evictions;  // the number of levels that were evicted from the cache.
+    private long integralImageBuilds;  // the number of times the integral image was built.
+    private BrightnessIntegralImage integralImage;  // used to build levels from scratch. Built lazily.
+    private LumaTable lumaTable = LumaTable.SRGB;  // the grey values of the pixels.
+
+    /**
+     * Constructor.
+     * @param image the image to build the pyramid for.
+     * @param parallel true iff the rows of each level should be calculated in parallel.
+     * @param maxCachedSums the maximal total number of sums in the cached levels and the integral image. A
+     *                       level has one sum per tile without colors, and four with them, and the
+     *                       integral image has one or four per pixel.
+     */
+    BrightnessPyramid(Image image, boolean parallel, long maxCachedSums) {
+        this.image = image;
+        this.parallel = parallel;
+        this.levels = new LinkedHashMap<>(INITIAL_CACHE_CAPACITY, CACHE_LOAD_FACTOR, true);
+        this.maxCachedSums = maxCachedSums;
+    }
+
+    /**
+     * @return the default maximal total number of cached sums: as many sums as take MAX_HEAP_FRACTION of
+     * the maximal heap size, so that the integral image of every image that may use one fits in the cache
+     * (e.g. the 2049 * 2049 sums of an image padded to 2048 * 2048 pixels, with a heap of 256 MB or more).
+     */
+    static long getDefaultMaxCachedSums() {
+        return (long) (Runtime.getRuntime().maxMemory() * MAX_HEAP_FRACTION / Long.BYTES);
+    }
+
+    /**
+     * @return the number of requests for a level that was cached.
+     */
+    long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of requests for a level that had to be built.
+     */
+    long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of levels that were evicted from the cache.
+     */
+    long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the number of times the integral image was built (again, after it was dropped or when the
+     * colors were first needed).
+     */
+    long getIntegralImageBuilds() {
+        return integralImageBuilds;
+    }
+
+    /**
+     * Sets the grey values of the pixels that the following levels are built from. If the table is changed,
+     * the cached levels and the integral image are dropped.
+     * @param lumaTable the grey values of the pixels.
+     */
+    void setLumaTable(LumaTable lumaTable) {
+        if (lumaTable == this.lumaTable) {
+            return;
+        }
+        this.lumaTable = lumaTable;
+        levels.clear();
+        numCachedSums = 0;
+        integralImage = null;
+    }
+
+    /**
+     * Returns the level of the pyramid for the given square tile size, building it if needed.
+     * @param pixels the width and height, in pixels, of each square tile.
+     * @param withColor true iff the level must have the average colors of the tiles.
+     * @return the level for the given tile size.
+     */
+    BrightnessLevel getLevel(int pixels, boolean withColor) {
+        return getLevel(pixels, pixels, withColor);
+    }
+
+    /**
+     * Returns the level of the pyramid for the given tile size, building it if needed.
+     * @param tileWidth the width, in pixels, of each tile.
+     * @param tileHeight the height, in pixels, of each tile.
+     * @param withColor true iff the level must have the average colors of the tiles.
+     * @return the level for the given tile size.
+     * @throws CancellationException if the calling thread is interrupted while the level (or the integral
+     *                               image) is built. It is checked before every row, and nothing is cached
+     *                               then.
+     */
+    BrightnessLevel getLevel(int tileWidth, int tileHeight, boolean withColor) {
+        long key = getKey(tileWidth, tileHeight);
+        BrightnessLevel level = levels.get(key);
+        if (level != null && (level.hasColor() || !withColor)) {
+            hits++;
+            return level;
+        }
+        misses++;
+        int numPlanes = withColor ? BrightnessIntegralImage.NUM_COLOR_PLANES :
+                BrightnessIntegralImage.NUM_GREY_PLANES;
+        int numRows = image.getHeight() / tileHeight;
+        int numCols = image.getWidth() / tileWidth;
+        BrightnessLevel finerLevel = null;
+        if (tileWidth % LEVEL_SCALE == 0 && tileHeight % LEVEL_SCALE == 0) {
+            finerLevel = levels.get(getKey(tileWidth / LEVEL_SCALE, tileHeight / LEVEL_SCALE));
+        }
+        if (finerLevel != null && finerLevel.getNumPlanes() >= numPlanes &&
+                finerLevel.getNumRows() == numRows * LEVEL_SCALE &&
+                finerLevel.getNumCols() == numCols * LEVEL_SCALE) {
+            level = deriveLevel(finerLevel, numPlanes, numRows, numCols);
+        } else if (canUseIntegralImage(withColor)) {
+            level = calculateLevel(tileWidth, tileHeight, numPlanes, numRows, numCols);
+        } else {
+            level = calculateLevelFromPixels(tileWidth, tileHeight, numPlanes, numRows, numCols);
+        }
+        cacheLevel(key, level);
+        return level;
+    }
+
+    /*
+     * Returns the key of the given tile size in the cache: the width in the high half of a long, and the
+     * height in the low half.
+     */
+    private static long getKey(int tileWidth, int tileHeight) {
+        return ((long) tileWidth << Integer.SIZE) | tileHeight;
+    }
+
+    /*
+     * Returns true iff the levels can be calculated from an integral image with the given planes: iff its
+     * planes fit in arrays, it fits in the cache by itself, and it takes at most MAX_HEAP_FRACTION
+     * of the maximal heap size.
+     */
+    private boolean canUseIntegralImage(boolean withColor) {
+        return BrightnessIntegralImage.canBuild(image) &&
+                BrightnessIntegralImage.getNumSums(image, withColor) <= maxCachedSums &&
+                BrightnessIntegralImage.getSizeInBytes(image, withColor) <=
+                        Runtime.getRuntime().maxMemory() * MAX_HEAP_FRACTION;
+    }
+
+    /*
+     * Puts the given level in the cache (instead of the cached level of the same size, if there is one),
+     * and evicts the least recently used other levels, and then the integral image, until the total number
+     * of cached sums is at most the maximum. If the level alone has more sums than the maximum, it isn't
+     * cached.
+     */
+    private void cacheLevel(long key, BrightnessLevel level) {
+        long numSums = getNumSums(level);
+        if (numSums > maxCachedSums) {
+            return;
+        }
+        BrightnessLevel replacedLevel = levels.put(key, level);
+        if (replacedLevel != null) {
+            numCachedSums -= getNumSums(replacedLevel);
+        }
+        numCachedSums += numSums;
+        evictLevels(1);
+        if (numCachedSums > maxCachedSums) {
+            dropIntegralImage();
+        }
+    }
+
+    /*
+     * Evicts the least recently used levels, except for the given number of the most recently used ones,
+     * until the total number of cached sums is at most the maximum.
+     */
+    private void evictLevels(int numLevelsKept) {
+        Iterator<BrightnessLevel> leastRecentlyUsed = levels.values().iterator();
+        while (numCachedSums > maxCachedSums && levels.size() > numLevelsKept) {
+            numCachedSums -= getNumSums(leastRecentlyUsed.next());
+            leastRecentlyUsed.remove();
+            evictions++;
+        }
+    }
+
+    /*
+     * Drops the integral image, if there is one, and its sums from the total number of cached sums.
+     */
+    private void dropIntegralImage() {
+        if (integralImage != null) {
+            numCachedSums -= integralImage.getNumSums();
+            integralImage = null;
+        }
+    }
+
+    /*
+     * Returns the number of sums in the given level: the number of tiles for each of its planes.
+     */
+    private static long getNumSums(BrightnessLevel level) {
+        return (long) level.getNumRows() * level.getNumCols() * level.getNumPlanes();
+    }
+
+    /*
+     * Calculates the level for the given tile size from the integral image. The integral image is built
+     * (again, if it was built without the colors and they are needed now), and the least recently used
+     * levels are evicted to make room for it in the cache.
+     */
+    private BrightnessLevel calculateLevel(int tileWidth, int tileHeight, int numPlanes, int numRows,
+                                           int numCols) {
+        if (integralImage == null || integralImage.getNumPlanes() < numPlanes) {
+            dropIntegralImage();
+            integralImage = new BrightnessIntegralImage(image,
+                    numPlanes == BrightnessIntegralImage.NUM_COLOR_PLANES, lumaTable);
+            numCachedSums += integralImage.getNumSums();
+            integralImageBuilds++;
+            evictLevels(0);
+        }
+        BrightnessIntegralImage integral = integralImage;
+        long[][][] planes = new long[numPlanes][numRows][numCols];
+        ParallelRows.forEachRow(numRows, parallel, row -> {
+            for (int plane = 0 ; plane < numPlanes ; plane++) {
+                for (int col = 0 ; col < numCols ; col++) {
+                    planes[plane][row][col] = integral.getSum(plane, col * tileWidth, row * tileHeight,
+                            tileWidth, tileHeight);
+                }
+            }
+        });
+        return new BrightnessLevel(planes, tileWidth, tileHeight);
+    }
+
+    /*
+     * Calculates the level for the given tile size by summing the pixels of each tile. The pixels are read
+     * row after row, so that an image that is paged in from disk is read sequentially.
+     */
+    private BrightnessLevel calculateLevelFromPixels(int tileWidth, int tileHeight, int numPlanes,
+                                                     int numRows, int numCols) {
+        long[][][] planes = new long[numPlanes][numRows][numCols];
+        LumaTable table = lumaTable;
+        ParallelRows.forEachRow(numRows, parallel, row ->
+            image.forEachPixel(0, row * tileHeight, numCols * tileWidth, tileHeight, (x, y, rgb) -> {
+                for (int plane = 0 ; plane < numPlanes ; plane++) {
+                    planes[plane][row][x / tileWidth] +=
+                            BrightnessIntegralImage.getPlaneValue(plane, rgb, table);
+                }
+            }));
+        return new BrightnessLevel(planes, tileWidth, tileHeight);
+    }
+
+    /*
+     * Derives the level with tiles twice as big as the tiles of the given level, by summing every 2x2 block
+     * of tiles of the given level, in each of the given number of planes.
+     */
+    private BrightnessLevel deriveLevel(BrightnessLevel finerLevel, int numPlanes, int numRows, int numCols) {
+        long[][][] planes = new long[numPlanes][numRows][numCols];
+        ParallelRows.forEachRow(numRows, parallel, row -> {
+            int finerRow = row * LEVEL_SCALE;
+            for (int plane = 0 ; plane < numPlanes ; plane++) {
+                for (int col = 0 ; col < numCols ; col++) {
+                    int finerCol = col * LEVEL_SCALE;
+                    planes[plane][row][col] = finerLevel.getSum(plane, finerRow, finerCol) +
+                            finerLevel.getSum(plane, finerRow, finerCol + 1) +
+                            finerLevel.getSum(plane, finerRow + 1, finerCol) +
+                            finerLevel.getSum(plane, finerRow + 1, finerCol + 1);
+                }
+            }
+        });
+        return new BrightnessLevel(planes, finerLevel.getTileWidth() * LEVEL_SCALE,
+                finerLevel.getTileHeight() * LEVEL_SCALE);
+    }
+}
@@ -0,0 +1,168 @@
+package ascii_art.img_to_char;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A charset that is kept sorted by the brightnesses of its characters as characters are added and removed.
+ * The brightness of a character is taken from the persistent glyph store (which renders the glyph if it
+ * doesn't have it yet) once, when the character is added. The charset can be changed in two ways:
+ * - Character by character, with add and remove: each character is inserted into or removed from the
+ *   sorted set in O(log n), and from the lookup table, which updates only the buckets it affects (see
+ *   CharLookupTable). Characters of equal brightness are ordered by their values.
+ * - To a whole given charSet, with update: the charSet of n characters is compared and diffed in O(n), and
+ *   the table is built again lazily, only when it is requested, since the order of the characters of equal
+ *   brightness is their order in the charSet, so on a tie the character that comes first in the charSet is
+ *   chosen, as before the index was kept.
+ */
+class CharBrightnessIndex {
+
+    private final GlyphBrightnessStore store;  // the brightnesses of all the characters of the font.
+    private final Map<Character, Double> brightnesses = new HashMap<>();  // of the indexed characters.
+    // The indexed characters, sorted by their brightnesses, and then by their values:
+    private final TreeSet<Character> sortedChars = new TreeSet<>(
+            Comparator.comparingDouble((Character c) -> brightnesses.get(c)).thenComparing(c -> c));
+    private final Map<Character, Integer> positions = new HashMap<>();  // in the last given charSet.
+    private Character[] lastCharSet = new Character[0];  // the last given charSet, null after add or remove.
+    private CharLookupTable charTable;  // the table of the indexed characters, null if it is out of date.
+
+    /**
+     * Constructor of an empty index.
+     * @param font the font name of the characters.
+     * @param pixels the width and height, in pixels, of the rendered characters.
+     */
+    CharBrightnessIndex(String font, int pixels) {
+        this.store = GlyphBrightnessStore.get(font, pixels);
+    }
+
+    /**
+     * Adds and removes characters so that the index has exactly the characters of the given charSet. Only
+     * the characters that are added or removed change the sorted index, and if any character was rendered
+     * for the first time, the glyph store is saved. If only the order of the charSet changed, the table is
+     * built again, since the order of characters of equal brightness may have changed. Takes O(n) for a
+     * charSet of n characters (unless it is the same as the last one), plus O(log n) per added or removed
+     * character.
+     * @param charSet the characters that the index should have. The array isn't changed.
+     */
+    void update(Character[] charSet) {
+        if (Arrays.equals(charSet, lastCharSet)) {
+            return;
+        }
+        lastCharSet = charSet.clone();
+        positions.clear();
+        for (int i = charSet.length - 1 ; i >= 0 ; i--) {  // the first position of a repeated character.
+            positions.put(charSet[i], i);
+        }
+        charTable = null;
+        Set<Character> newChars = positions.keySet();
+        for (Character c : sortedChars.toArray(new Character[0])) {
+            if (!newChars.contains(c)) {
+                removeFromSet(c);
+            }
+        }
+        for (Character c : newChars) {
+            addToSet(c);
+        }
+        store.save();
+    }
+
+    /**
+     * Adds the given character, if the index doesn't have it, and inserts it into the lookup table, if it
+     * was built. The glyph store isn't saved, see saveGlyphs. Takes O(log n), plus the update of the table.
+     * @param c the character to add.
+     */
+    void add(char c) {
+        forgetCharSetOrder();
+        if (addToSet(c) && charTable != null) {
+            charTable.insert(c, brightnesses.get(c));
+        }
+    }
+
+    /**
+     * Removes the given character, if the index has it, and removes it from the lookup table, if it was
+     * built. Takes O(log n), plus the update of the table.
+     * @param c the character to remove.
+     */
+    void remove(char c) {
+        forgetCharSetOrder();
+        double brightness = brightnesses.getOrDefault(c, Double.NaN);
+        if (removeFromSet(c) && charTable != null) {
+            charTable.remove(c, brightness);
+        }
+    }
+
+    /**
+     * Saves the brightnesses of the glyphs that were rendered for the characters that were added since the
+     * last save to the glyph store file, if there are any.
+     */
+    void saveGlyphs() {
+        store.save();
+    }
+
+    /**
+     * Returns the lookup table of the indexed characters. The table is built only if the index changed since
+     * the last call, otherwise the same table is returned. The brightnesses in the table are linearly
+     * stretched to the range [0, 1]; if all the characters are equally bright, they are all zero.
+     * @return the lookup table of the closest characters by brightness.
+     */
+    CharLookupTable getCharTable() {
+        if (charTable != null) {
+            return charTable;
+        }
+        Character[] chars = sortedChars.toArray(new Character[0]);
+        int tieStart = 0;  // the index of the first character of the current run of equal brightnesses.
+        for (int i = 1 ; i <= chars.length && lastCharSet != null ; i++) {
+            if (i == chars.length || !brightnesses.get(chars[i]).equals(brightnesses.get(chars[tieStart]))) {
+                Arrays.sort(chars, tieStart, i, Comparator.comparingInt(positions::get));
+                tieStart = i;
+            }
+        }
+        double[] charBrightness = new double[chars.length];
+        for (int i = 0 ; i < chars.length ; i++) {
+            charBrightness[i] = brightnesses.get(chars[i]);
+        }
+        charTable = new CharLookupTable(chars, charBrightness);
+        return charTable;
+    }
+
+    /*
+     * Adds the given character to the sorted set, if it doesn't have it. Returns true iff it was added.
+     */
+    private boolean addToSet(char c) {
+        if (brightnesses.containsKey(c)) {
+            return false;
+        }
+        brightnesses.put(c, store.getBrightness(c));  // before sortedChars, which compares by it.
+        sortedChars.add(c);
+        return true;
+    }
+
+    /*
+     * Removes the given character from the sorted set, if it has it. Returns true iff it was removed.
+     */
+    private boolean removeFromSet(char c) {
+        if (!brightnesses.containsKey(c)) {
+            return false;
+        }
+        sortedChars.remove(c);  // before brightnesses, since sortedChars compares by it.
+        brightnesses.remove(c);
+        return true;
+    }
+
+    /*
+     * Orders the characters of equal brightness by their values from now on, instead of by their positions
+     * in the last given charSet. The table is built again if it was ordered by the positions.
+     */
+    private void forgetCharSetOrder() {
+        if (lastCharSet == null) {
+            return;
+        }
+        lastCharSet = null;
+        positions.clear();
+        charTable = null;
+    }
+}
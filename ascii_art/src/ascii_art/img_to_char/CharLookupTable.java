@@ -0,0 +1,276 @@
+package ascii_art.img_to_char;
+
+import java.util.Arrays;
+
+/**
+ * A quantized lookup table from brightness to the character with the closest brightness. The brightnesses
+ * of the characters are linearly stretched to the range [0, 1], which is divided into NUM_BUCKETS equal
+ * buckets, and for the edges of every bucket the closest character is found once, when the table is built.
+ * Because the characters are sorted by brightness, the closest character to any brightness inside a bucket
+ * is between the closest characters to the edges of the bucket, which are almost always the same character
+ * or two adjacent ones. So matching a brightness to a character is an array access and a comparison or two,
+ * instead of a scan over the whole charset, and it chooses exactly the same character the scan would choose.
+ * A character can be inserted into or removed from the table without building it again: only the edges
+ * between the brightnesses of its neighbours look for their closest characters again, and the later edges
+ * move by one index. If the character changes the darkest or the brightest brightness, all the stretched
+ * brightnesses change, so the table is built again.
+ */
+class CharLookupTable {
+
+    static final int NUM_BUCKETS = 4096;  // the number of brightness buckets.
+    private static final int MIN_CAPACITY = 16;  // the initial length of the arrays of the characters.
+
+    private char[] charSet;  // the characters, sorted by brightness, in the first numChars cells.
+    private double[] rawBrightness;  // the brightness of the character at the same index, before stretching.
+    private double[] charBrightness;  // the stretched brightness of the character at the same index.
+    private int numChars;  // the number of characters in the table.
+    // bucketEdges[k] is the index of the closest character to the brightness k / NUM_BUCKETS:
+    private final int[] bucketEdges = new int[NUM_BUCKETS + 1];
+    private int version;  // the number of times the characters changed since the table was built.
+
+    /**
+     * Constructor. Stretches the brightnesses and builds the table in O(NUM_BUCKETS + n), where n is the
+     * number of characters, by walking over the bucket edges and the sorted characters together.
+     * @param charSet the characters, sorted by their brightnesses in an increasing order. Characters of
+     *                equal brightness are chosen in the order they are given. The array isn't kept.
+     * @param rawBrightness the brightnesses of the characters, before stretching, such that the brightness
+     *                      of the character at index i in charSet is at index i. The array isn't kept.
+     */
+    CharLookupTable(Character[] charSet, double[] rawBrightness) {
+        this.numChars = charSet.length;
+        this.charSet = new char[Math.max(MIN_CAPACITY, numChars)];
+        for (int i = 0 ; i < numChars ; i++) {
+            this.charSet[i] = charSet[i];
+        }
+        this.rawBrightness = Arrays.copyOf(rawBrightness, this.charSet.length);
+        this.charBrightness = new double[this.charSet.length];
+        build();
+    }
+
+    /**
+     * Inserts the given character, after the characters that are darker, and after the characters of equal
+     * brightness whose values are smaller. Takes O(log n) for the search, plus the moves of the later
+     * characters and bucket edges by one index, plus O(log n) per bucket edge between the brightnesses of
+     * the neighbours of the character, unless the table is built again.
+     * @param c the character to insert. The table must not have it.
+     * @param brightness the brightness of the character, before stretching.
+     */
+    void insert(char c, double brightness) {
+        int index = numChars;  // the first index of a character that comes after c.
+        for (int low = 0, high = numChars ; low < high ; ) {
+            int mid = (low + high) >>> 1;
+            if (rawBrightness[mid] > brightness || (rawBrightness[mid] == brightness && charSet[mid] > c)) {
+                high = index = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        boolean stretchChanges = numChars < 2 || brightness < rawBrightness[0] ||
+                brightness > rawBrightness[numChars - 1];
+        if (numChars == charSet.length) {
+            charSet = Arrays.copyOf(charSet, numChars * 2);
+            rawBrightness = Arrays.copyOf(rawBrightness, numChars * 2);
+            charBrightness = Arrays.copyOf(charBrightness, numChars * 2);
+        }
+        System.arraycopy(charSet, index, charSet, index + 1, numChars - index);
+        System.arraycopy(rawBrightness, index, rawBrightness, index + 1, numChars - index);
+        System.arraycopy(charBrightness, index, charBrightness, index + 1, numChars - index);
+        charSet[index] = c;
+        rawBrightness[index] = brightness;
+        numChars++;
+        version++;
+        if (stretchChanges) {
+            build();
+            return;
+        }
+        charBrightness[index] = stretch(brightness);
+        for (int bucket = NUM_BUCKETS ; bucket >= 0 && bucketEdges[bucket] >= index ; bucket--) {
+            bucketEdges[bucket]++;
+        }
+        updateBucketEdges(charBrightness[index]);
+    }
+
+    /**
+     * Removes the given character. Takes as long as insert.
+     * @param c the character to remove. The table must have it.
+     * @param brightness the brightness of the character, before stretching, as it was inserted.
+     */
+    void remove(char c, double brightness) {
+        int index = findFirstAtLeast(rawBrightness, brightness);
+        while (charSet[index] != c) {
+            index++;
+        }
+        boolean stretchChanges = numChars <= 2 || brightness == rawBrightness[0] ||
+                brightness == rawBrightness[numChars - 1];
+        double stretched = charBrightness[index];
+        System.arraycopy(charSet, index + 1, charSet, index, numChars - index - 1);
+        System.arraycopy(rawBrightness, index + 1, rawBrightness, index, numChars - index - 1);
+        System.arraycopy(charBrightness, index + 1, charBrightness, index, numChars - index - 1);
+        numChars--;
+        version++;
+        if (stretchChanges) {
+            build();
+            return;
+        }
+        for (int bucket = NUM_BUCKETS ; bucket >= 0 && bucketEdges[bucket] > index ; bucket--) {
+            bucketEdges[bucket]--;
+        }
+        updateBucketEdges(stretched);
+    }
+
+    /**
+     * Chooses the character whose brightness is the closest to the given brightness. If several characters
+     * are equally close, chooses the one that comes first in the charSet.
+     * @param brightness a brightness in the range [0, 1].
+     * @return the closest character by brightness.
+     */
+    char getChar(double brightness) {
+        return charSet[getIndex(brightness)];
+    }
+
+    /**
+     * Finds the character whose brightness is the closest to the given brightness, as getChar does.
+     * @param brightness a brightness in the range [0, 1].
+     * @return the index of the closest character by brightness.
+     */
+    int getIndex(double brightness) {
+        int bucket = Math.max(0, Math.min(NUM_BUCKETS - 1, (int) (brightness * NUM_BUCKETS)));
+        int best = bucketEdges[bucket];
+        double bestDifference = Math.abs(brightness - charBrightness[best]);
+        for (int i = best + 1 ; i <= bucketEdges[bucket + 1] ; i++) {
+            if (Math.abs(brightness - charBrightness[i]) < bestDifference) {
+                best = i;
+                bestDifference = Math.abs(brightness - charBrightness[i]);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the number of characters in the table.
+     */
+    int getNumChars() {
+        return numChars;
+    }
+
+    /**
+     * @param index the index of a character, in the order of brightness.
+     * @return the character at the given index.
+     */
+    char getCharAt(int index) {
+        return charSet[index];
+    }
+
+    /**
+     * @param index the index of a character, in the order of brightness.
+     * @return the (linearly stretched) brightness of the character at the given index.
+     */
+    double getBrightnessAt(int index) {
+        return charBrightness[index];
+    }
+
+    /**
+     * @return the number of times characters were inserted into or removed from the table, so that the
+     * users of the table can tell whether the characters at its indexes changed.
+     */
+    int getVersion() {
+        return version;
+    }
+
+    /*
+     * Stretches the brightnesses of all the characters, and finds the closest character to every bucket
+     * edge.
+     */
+    private void build() {
+        for (int i = 0 ; i < numChars ; i++) {
+            charBrightness[i] = stretch(rawBrightness[i]);
+        }
+        int lower = 0;  // the first index of the greatest brightness that is at most the current edge.
+        int upper = 0;  // the first index of a brightness that is greater than the current edge.
+        for (int bucket = 0 ; bucket <= NUM_BUCKETS ; bucket++) {
+            double edge = ((double) bucket) / NUM_BUCKETS;
+            while (upper < numChars && charBrightness[upper] <= edge) {
+                if (charBrightness[upper] != charBrightness[lower]) {
+                    lower = upper;
+                }
+                upper++;
+            }
+            // On a tie, the character that comes first in the charSet is chosen:
+            bucketEdges[bucket] = lower;
+            if (upper < numChars &&
+                    Math.abs(edge - charBrightness[upper]) < Math.abs(edge - charBrightness[lower])) {
+                bucketEdges[bucket] = upper;
+            }
+        }
+    }
+
+    /*
+     * Linearly stretches the given brightness from the range of the brightnesses of the characters to the
+     * range [0, 1]. If all the characters are equally bright, their brightnesses are all zero.
+     */
+    private double stretch(double brightness) {
+        double minBrightness = rawBrightness[0];
+        double maxBrightness = rawBrightness[numChars - 1];
+        return minBrightness == maxBrightness ? 0 :
+                (brightness - minBrightness) / (maxBrightness - minBrightness);
+    }
+
+    /*
+     * Finds the closest characters again for the bucket edges whose closest characters may have changed
+     * when a character of the given stretched brightness was inserted or removed: the edges between the
+     * nearest darker and the nearest brighter characters, or the ends of the range if there is none.
+     */
+    private void updateBucketEdges(double stretched) {
+        int darker = findFirstAtLeast(charBrightness, stretched) - 1;
+        int brighter = darker + 1;
+        while (brighter < numChars && charBrightness[brighter] <= stretched) {
+            brighter++;
+        }
+        int first = darker < 0 ? 0 : (int) Math.floor(charBrightness[darker] * NUM_BUCKETS);
+        int last = brighter == numChars ? NUM_BUCKETS :
+                Math.min(NUM_BUCKETS, (int) Math.ceil(charBrightness[brighter] * NUM_BUCKETS));
+        for (int bucket = first ; bucket <= last ; bucket++) {
+            bucketEdges[bucket] = findClosest(((double) bucket) / NUM_BUCKETS);
+        }
+    }
+
+    /*
+     * Finds the closest character to the given bucket edge, like build does: the first character of the
+     * greatest brightness that is at most the edge, unless the next character is strictly closer.
+     */
+    private int findClosest(double edge) {
+        int upper = numChars;  // the first index of a brightness that is greater than the edge.
+        for (int low = 0, high = numChars ; low < high ; ) {
+            int mid = (low + high) >>> 1;
+            if (charBrightness[mid] > edge) {
+                high = upper = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        int lower = upper == 0 ? 0 : findFirstAtLeast(charBrightness, charBrightness[upper - 1]);
+        if (upper < numChars &&
+                Math.abs(edge - charBrightness[upper]) < Math.abs(edge - charBrightness[lower])) {
+            return upper;
+        }
+        return lower;
+    }
+
+    /*
+     * Returns the first index among the first numChars cells of the given sorted array whose value is at
+     * least the given value, or numChars if there is none.
+     */
+    private int findFirstAtLeast(double[] sorted, double value) {
+        int low = 0;
+        int high = numChars;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
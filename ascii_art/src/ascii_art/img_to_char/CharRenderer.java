@@ -2,6 +2,8 @@ package ascii_art.img_to_char;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Inspired by, and partly copied from
@@ -10,6 +12,9 @@ import java.awt.image.BufferedImage;
  * https://dzone.com/articles/ascii-art-generator-java
  * Adaptations made by Dan Nirel.
  * The class renders (draws) characters to a binary "image" (2D array of booleans).
+ * The rendered characters are kept in a process-wide cache, bounded by MAX_CACHED_GLYPHS and keyed by the
+ * font name, the resolution and the character, so every character is rendered through AWT only once no
+ * matter how many matchers use it.
  */
 public class CharRenderer {
 
@@ -17,6 +22,18 @@ public class CharRenderer {
     private static final double Y_OFFSET_FACTOR = 0.75;
     private static final char CHAR_FOR_TRUE = ' ';  // the character to print for the true value.
     private static final char CHAR_FOR_FALSE = '#';  // the character to print for the false value.
+    private static final int MAX_CACHED_GLYPHS = 4096;  // the maximal number of glyphs in the cache.
+    private static final float CACHE_LOAD_FACTOR = 0.75f;
+
+    // The rendered glyphs, by font, resolution and character. The least recently used glyph is evicted when
+    // the cache is full. Guarded by its own lock:
+    private static final Map<GlyphKey, GlyphMetrics> GLYPH_CACHE =
+            new LinkedHashMap<>(MAX_CACHED_GLYPHS, CACHE_LOAD_FACTOR, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<GlyphKey, GlyphMetrics> eldest) {
+                    return size() > MAX_CACHED_GLYPHS;
+                }
+            };
 
     /**
      * Renders a given character, according to how it looks in the font specified in the
@@ -24,8 +41,58 @@ public class CharRenderer {
      * whose dimension in pixels is specified.
      */
     public static boolean[][] getImg(char c, int pixels, String fontName) {
-        int key = (pixels << 8) | c;
-        return render(c, pixels, fontName);
+        boolean[][] bitmap = getGlyph(c, pixels, fontName).getBitmap();
+        boolean[][] copy = new boolean[bitmap.length][];  // the cached bitmap is shared, so return a copy.
+        for (int y = 0 ; y < bitmap.length ; y++) {
+            copy[y] = bitmap[y].clone();
+        }
+        return copy;
+    }
+
+    /**
+     * Calculates the brightness of a given character in the specified font and resolution, that is, the
+     * number of white pixels divided by the total number of pixels in its rendered image.
+     * @param c the character.
+     * @param pixels the width and height, in pixels, of the rendered image of the character.
+     * @param fontName the name of the font.
+     * @return the brightness of the character, in the range [0, 1].
+     */
+    public static double getBrightness(char c, int pixels, String fontName) {
+        return getGlyph(c, pixels, fontName).getBrightness();
+    }
+
+    /**
+     * Empties the cache of the rendered glyphs, so that every glyph is rendered again when it is requested
+     * next. Is meant for measuring the cost of rendering.
+     */
+    public static void clearCache() {
+        synchronized (GLYPH_CACHE) {
+            GLYPH_CACHE.clear();
+        }
+    }
+
+    /**
+     * Returns the rendered glyph of the given character from the cache, rendering it if it isn't cached.
+     * The rendering itself is done outside the lock, so threads that render different characters don't
+     * wait for each other. Two threads may render the same character, in which case both get equal glyphs.
+     * @param c the character.
+     * @param pixels the width and height, in pixels, of the rendered image of the character.
+     * @param fontName the name of the font.
+     * @return the shared glyph of the character.
+     */
+    static GlyphMetrics getGlyph(char c, int pixels, String fontName) {
+        GlyphKey key = new GlyphKey(c, pixels, fontName);
+        GlyphMetrics glyph;
+        synchronized (GLYPH_CACHE) {
+            glyph = GLYPH_CACHE.get(key);
+        }
+        if (glyph == null) {
+            glyph = new GlyphMetrics(render(c, pixels, fontName));
+            synchronized (GLYPH_CACHE) {
+                GLYPH_CACHE.put(key, glyph);
+            }
+        }
+        return glyph;
     }
 
     /*
@@ -68,4 +135,32 @@ public class CharRenderer {
             System.out.println();
         }
     }
+
+    /*
+     * The key of a glyph in the cache: a character in some font and resolution.
+     */
+    private static class GlyphKey {
+        private final char c;
+        private final int pixels;
+        private final String fontName;
+
+        GlyphKey(char c, int pixels, String fontName) {
+            this.c = c;
+            this.pixels = pixels;
+            this.fontName = fontName;
+        }
+
+        @Override
+        public int hashCode() {
+            return c + 31 * pixels + 961 * fontName.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof GlyphKey))
+                return false;
+            GlyphKey other = (GlyphKey) obj;
+            return this.c == other.c && this.pixels == other.pixels && this.fontName.equals(other.fontName);
+        }
+    }
 }
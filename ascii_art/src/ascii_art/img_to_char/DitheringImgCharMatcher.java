@@ -0,0 +1,96 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+import java.util.Arrays;
+
+/**
+ * Matches ASCII characters to images according to brightness, with Floyd-Steinberg error diffusion. The
+ * difference between the brightness of a tile and the brightness of the character chosen for it is spread
+ * over the neighboring tiles that weren't converted yet, so that with a few characters, areas of a smooth
+ * gradient are drawn by a mix of the characters in the right proportion, instead of bands of one character.
+ * The brightnesses of the tiles are taken from the brightness pyramid, like in BrightnessImgCharMatcher,
+ * and the errors are kept for two rows only (the current one and the next one), so the rows are still
+ * streamed to the output. Since the error of a row depends on the previous rows, the rows are always
+ * converted in order, on the calling thread.
+ */
+public class DitheringImgCharMatcher extends BrightnessImgCharMatcher {
+
+    // The fractions of the error that are added to the neighbors of a tile:
+    private static final double RIGHT_WEIGHT = 7.0 / 16;
+    private static final double BELOW_LEFT_WEIGHT = 3.0 / 16;
+    private static final double BELOW_WEIGHT = 5.0 / 16;
+    private static final double BELOW_RIGHT_WEIGHT = 1.0 / 16;
+
+    /**
+     * Constructor.
+     * @param image the image to match the characters to.
+     * @param font the font name of the characters.
+     */
+    public DitheringImgCharMatcher(Image image, String font) {
+        super(image, font);
+    }
+
+    /**
+     * Constructor of a matcher that shares the image and the caches of the given matcher (see
+     * BrightnessImgCharMatcher).
+     * @param other the matcher to share the image and the caches with.
+     */
+    public DitheringImgCharMatcher(BrightnessImgCharMatcher other) {
+        super(other);
+    }
+
+    /**
+     * Returns the converter that chooses for each tile of the given level the closest character by its
+     * brightness plus the error diffused to it. The converter must be called for the rows in order, from the
+     * first row, and by one thread.
+     * @param charTable the lookup table of the possible characters.
+     * @param level the brightnesses of the tiles to convert.
+     * @return the converter of the rows of the given level.
+     */
+    @Override
+    RowConverter getRowConverter(CharLookupTable charTable, BrightnessLevel level) {
+        return new DiffusingRowConverter(charTable, level);
+    }
+
+    /*
+     * Converts the rows of a level in order, diffusing the errors of every row to the rest of the row and to
+     * the next row.
+     */
+    private static class DiffusingRowConverter implements RowConverter {
+        private final CharLookupTable charTable;  // the lookup table of the characters.
+        private final BrightnessLevel level;  // the brightnesses of the tiles.
+        private double[] errors;  // the errors diffused to the tiles of the current row, by column.
+        private double[] nextErrors;  // the errors diffused to the tiles of the next row, by column.
+
+        DiffusingRowConverter(CharLookupTable charTable, BrightnessLevel level) {
+            this.charTable = charTable;
+            this.level = level;
+            this.errors = new double[level.getNumCols()];
+            this.nextErrors = new double[level.getNumCols()];
+        }
+
+        @Override
+        public void convertRow(int rowIndex, char[] row) {
+            int lastCol = row.length - 1;
+            for (int col = 0 ; col < row.length ; col++) {
+                double brightness = level.getBrightness(rowIndex, col) + errors[col];
+                int index = charTable.getIndex(brightness);
+                row[col] = charTable.getCharAt(index);
+                double error = brightness - charTable.getBrightnessAt(index);
+                if (col < lastCol) {
+                    errors[col + 1] += error * RIGHT_WEIGHT;
+                    nextErrors[col + 1] += error * BELOW_RIGHT_WEIGHT;
+                }
+                if (col > 0) {
+                    nextErrors[col - 1] += error * BELOW_LEFT_WEIGHT;
+                }
+                nextErrors[col] += error * BELOW_WEIGHT;
+            }
+            // The array of the errors of the converted row is reused for the row after the next one:
+            double[] rowErrors = errors;
+            errors = nextErrors;
+            nextErrors = rowErrors;
+            Arrays.fill(nextErrors, 0);
+        }
+    }
+}
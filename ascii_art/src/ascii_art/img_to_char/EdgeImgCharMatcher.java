@@ -0,0 +1,145 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+
+/**
+ * Matches ASCII characters to images according to their shapes, so that the outlines in the image are
+ * drawn by characters of similar shapes (such as '|', '/' and '_'), and not only by characters of similar
+ * brightness.
+ * Every tile is divided into MASK_SIZE x MASK_SIZE cells, whose brightnesses are taken from the pyramid
+ * level of the cell size, and is reduced to a 64-bit mask whose bit is 1 iff the cell is brighter than the
+ * tile. The masks of the characters are precomputed from their rendered images (see GlyphMetrics), so
+ * comparing a tile to a character is an XOR and a bit count of two longs. The character with the smallest
+ * cost is chosen, where the cost is the number of different bits plus the difference of brightnesses,
+ * weighted by BRIGHTNESS_WEIGHT, so that the tone of the image is kept too.
+ * Tiles whose cells are all of about the same brightness have no shape to match, so the closest character
+ * by brightness is chosen for them, as by BrightnessImgCharMatcher. So is for all the tiles that are too
+ * small to be divided into the cells.
+ */
+public class EdgeImgCharMatcher extends BrightnessImgCharMatcher {
+
+    private static final int MASK_SIZE = GlyphMetrics.MASK_SIZE;
+    private static final int NUM_CELLS = MASK_SIZE * MASK_SIZE;
+    // The cost of the maximal difference of brightnesses, in different bits of the masks:
+    private static final double BRIGHTNESS_WEIGHT = 16;
+    // The minimal difference between the brightnesses of the brightest and the darkest cells of a tile, for
+    // matching the tile by shape:
+    private static final double MIN_CONTRAST = 0.15;
+
+    private CharLookupTable maskedTable;  // the lookup table of the last built masks.
+    private int maskedVersion;  // the version of the maskedTable when the masks were built.
+    private long[] charMasks;  // the masks of the characters of the maskedTable, at the same indexes.
+
+    /**
+     * Constructor.
+     * @param image the image to match the characters to.
+     * @param font the font name of the characters.
+     */
+    public EdgeImgCharMatcher(Image image, String font) {
+        super(image, font);
+    }
+
+    /**
+     * Constructor.
+     * @param image the image to match the characters to.
+     * @param font the font name of the characters.
+     * @param parallel true iff the image should be converted in parallel, in bands of rows on the common
+     *                 ForkJoinPool. The result is the same as in the sequential conversion.
+     */
+    public EdgeImgCharMatcher(Image image, String font, boolean parallel) {
+        super(image, font, parallel);
+    }
+
+    /**
+     * Constructor of a matcher that shares the image and the caches of the given matcher (see
+     * BrightnessImgCharMatcher). The cells of the tiles are taken from the shared brightnesses too.
+     * @param other the matcher to share the image and the caches with.
+     */
+    public EdgeImgCharMatcher(BrightnessImgCharMatcher other) {
+        super(other);
+    }
+
+    /**
+     * Returns the converter that chooses for each tile of the given level the character of the closest
+     * shape, or the closest brightness if the tile has a low contrast. If the tiles can't be divided into
+     * MASK_SIZE x MASK_SIZE cells of whole pixels, all the tiles are matched by brightness.
+     * @param charTable the lookup table of the possible characters.
+     * @param level the brightnesses of the tiles to convert.
+     * @return the converter of the rows of the given level.
+     */
+    @Override
+    RowConverter getRowConverter(CharLookupTable charTable, BrightnessLevel level) {
+        int tileWidth = level.getTileWidth();
+        int tileHeight = level.getTileHeight();
+        // This includes the tiles that are smaller than the mask:
+        if (tileWidth % MASK_SIZE != 0 || tileHeight % MASK_SIZE != 0) {
+            return super.getRowConverter(charTable, level);
+        }
+        long[] masks = getCharMasks(charTable);
+        BrightnessLevel cells = getBrightnessPyramid().getLevel(tileWidth / MASK_SIZE, tileHeight / MASK_SIZE,
+                false);
+        return (rowIndex, row) -> {
+            for (int col = 0 ; col < row.length ; col++) {
+                row[col] = matchTile(charTable, masks, level, cells, rowIndex, col);
+            }
+        };
+    }
+
+    /*
+     * Returns the masks of the characters of the given lookup table, in the order of the table. The masks
+     * are built only when the table or its characters differ from those of the previous call (the table is
+     * built again or updated only when the charset changes).
+     */
+    private long[] getCharMasks(CharLookupTable charTable) {
+        if (charTable == maskedTable && charTable.getVersion() == maskedVersion) {
+            return charMasks;
+        }
+        charMasks = new long[charTable.getNumChars()];
+        for (int i = 0 ; i < charMasks.length ; i++) {
+            charMasks[i] = CharRenderer.getGlyph(charTable.getCharAt(i), CHAR_RESOLUTION, getFont())
+                    .getMask();
+        }
+        maskedTable = charTable;
+        maskedVersion = charTable.getVersion();
+        return charMasks;
+    }
+
+    /*
+     * Chooses the character for the tile at the given row and column of the given level, whose cells are
+     * in the given level of cells.
+     */
+    private static char matchTile(CharLookupTable charTable, long[] masks, BrightnessLevel level,
+                                  BrightnessLevel cells, int rowIndex, int col) {
+        double brightness = level.getBrightness(rowIndex, col);
+        long tileSum = level.getSum(BrightnessIntegralImage.GREY_PLANE, rowIndex, col);
+        long minSum = Long.MAX_VALUE;
+        long maxSum = Long.MIN_VALUE;
+        long tileMask = 0;
+        for (int cellY = 0 ; cellY < MASK_SIZE ; cellY++) {
+            long[] cellSums = cells.getRowSums(BrightnessIntegralImage.GREY_PLANE,
+                    rowIndex * MASK_SIZE + cellY);
+            for (int cellX = 0 ; cellX < MASK_SIZE ; cellX++) {
+                long cellSum = cellSums[col * MASK_SIZE + cellX];
+                minSum = Math.min(minSum, cellSum);
+                maxSum = Math.max(maxSum, cellSum);
+                if (cellSum * NUM_CELLS > tileSum) {  // the cell is brighter than the average of the tile.
+                    tileMask |= 1L << (cellY * MASK_SIZE + cellX);
+                }
+            }
+        }
+        if (BrightnessIntegralImage.toBrightness(maxSum - minSum, cells.getTilePixels()) < MIN_CONTRAST) {
+            return charTable.getChar(brightness);
+        }
+        int best = 0;
+        double bestCost = Double.MAX_VALUE;
+        for (int i = 0 ; i < masks.length ; i++) {
+            double cost = Long.bitCount(tileMask ^ masks[i]) +
+                    BRIGHTNESS_WEIGHT * Math.abs(brightness - charTable.getBrightnessAt(i));
+            if (cost < bestCost) {
+                best = i;
+                bestCost = cost;
+            }
+        }
+        return charTable.getCharAt(best);
+    }
+}
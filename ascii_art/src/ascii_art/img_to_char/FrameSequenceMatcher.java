@@ -0,0 +1,174 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+
+/**
+ * Matches ASCII characters to a sequence of frames (images of the same size) according to brightness. Every
+ * frame is matched by a BrightnessImgCharMatcher, so the frames are converted like single images: in the
+ * same sub-image shape and light mode, in parallel if requested, and with the brightnesses of the tiles
+ * taken from the pyramid of the frame. The matchers of the frames share the index of the characters, so the
+ * lookup table of the characters is built once for the whole sequence, and so are the array of the chosen
+ * characters and the buffers of the frame. A tile takes the character chosen for it only if its brightness
+ * changed by at least the threshold since it was last matched, so the character of a tile that barely
+ * changed doesn't flicker, and the cells whose characters changed are reported, so that only they are
+ * redrawn.
+ */
+public class FrameSequenceMatcher {
+
+    private final String font;  // the font name of the characters.
+    private final Character[] charSet;  // the possible characters, for all the frames.
+    private final int numCharsInRow;  // the number of characters in each row.
+    private final double threshold;  // the minimal change in the brightness of a tile to match it again.
+    private final boolean parallel;  // true iff the rows of every frame are converted in parallel.
+    private double cellAspectRatio = 1;  // the ratio of the height of a sub-image to its width.
+    private boolean linearLight;  // true iff the brightnesses are measured in linear light.
+    private BrightnessImgCharMatcher frameMatcher;  // the matcher of the last frame, null before the first.
+    private int frameWidth;  // the width of the frames of the sequence, or 0 before the first frame.
+    private int frameHeight;  // the height of the frames of the sequence, or 0 before the first frame.
+    private char[][] chars;  // the chosen characters, by row and column.
+    private char[][] frameChars;  // the characters chosen for all the tiles of the last frame.
+    private double[] matchedBrightness;  // the brightness each cell was last matched with, by cell index.
+    private int[] changedCells;  // the indexes of the cells whose characters changed in the last frame.
+    private int numChangedCells;  // the number of indexes in changedCells.
+
+    /**
+     * Constructor of a matcher that converts the frames sequentially.
+     * @param font the font name of the characters.
+     * @param charSet the list of the possible characters in the ASCII art of the frames.
+     * @param numCharsInRow the number of characters in each row of the ASCII art of the frames.
+     * @param threshold the minimal change in the average brightness (in the range [0, 1]) of a tile since it
+     *                  was last matched, for matching it again. Zero matches all the tiles in every frame.
+     */
+    public FrameSequenceMatcher(String font, Character[] charSet, int numCharsInRow, double threshold) {
+        this(font, charSet, numCharsInRow, threshold, false);
+    }
+
+    /**
+     * Constructor.
+     * @param font the font name of the characters.
+     * @param charSet the list of the possible characters in the ASCII art of the frames.
+     * @param numCharsInRow the number of characters in each row of the ASCII art of the frames.
+     * @param threshold the minimal change in the average brightness (in the range [0, 1]) of a tile since it
+     *                  was last matched, for matching it again. Zero matches all the tiles in every frame.
+     * @param parallel true iff every frame should be converted in parallel, as by BrightnessImgCharMatcher.
+     */
+    public FrameSequenceMatcher(String font, Character[] charSet, int numCharsInRow, double threshold,
+                                boolean parallel) {
+        this.font = font;
+        this.charSet = charSet.clone();
+        this.numCharsInRow = numCharsInRow;
+        this.threshold = threshold;
+        this.parallel = parallel;
+    }
+
+    /**
+     * Sets the shape of the sub-images of the characters of the following frames, as in
+     * BrightnessImgCharMatcher. If it changes the number of rows, the sequence starts over.
+     * @param cellAspectRatio the ratio of the height of each sub-image to its width. Must be positive. The
+     *                        default is 1 (square sub-images).
+     */
+    public void setCellAspectRatio(double cellAspectRatio) {
+        this.cellAspectRatio = cellAspectRatio;
+    }
+
+    /**
+     * Sets whether the brightnesses of the tiles of the following frames are measured in linear light, as
+     * in BrightnessImgCharMatcher.
+     * @param linearLight true iff the brightnesses should be measured in linear light.
+     */
+    public void setLinearLight(boolean linearLight) {
+        this.linearLight = linearLight;
+    }
+
+    /**
+     * Matches characters to the next frame of the sequence. If the size of the frame (or the number of its
+     * rows and columns of tiles) differs from that of the previous frames, the sequence starts over, and all
+     * the cells are matched and changed.
+     * @param frame the next frame.
+     * @return the number of cells whose characters changed.
+     */
+    public int matchFrame(Image frame) {
+        frameMatcher = frameMatcher == null ? new BrightnessImgCharMatcher(frame, font, parallel) :
+                new BrightnessImgCharMatcher(frame, frameMatcher);
+        frameMatcher.setCellAspectRatio(cellAspectRatio);
+        frameMatcher.setLinearLight(linearLight);
+        BrightnessLevel level = frameMatcher.getLevel(numCharsInRow, false);
+        boolean newSequence = frame.getWidth() != frameWidth || frame.getHeight() != frameHeight ||
+                level.getNumRows() != getNumRows() || level.getNumCols() != getNumCols();
+        if (newSequence) {
+            startSequence(frame.getWidth(), frame.getHeight(), level.getNumRows(), level.getNumCols());
+        }
+        BrightnessImgCharMatcher.RowConverter rowConverter = frameMatcher.getRowConverter(
+                frameMatcher.getCharTable(charSet), level);
+        ParallelRows.forEachRow(frameChars.length, parallel,
+                row -> rowConverter.convertRow(row, frameChars[row]));
+        int numCols = getNumCols();
+        numChangedCells = 0;
+        for (int cell = 0 ; cell < matchedBrightness.length ; cell++) {
+            int row = cell / numCols;
+            int col = cell % numCols;
+            double brightness = level.getBrightness(row, col);
+            if (!newSequence && Math.abs(brightness - matchedBrightness[cell]) < threshold) {
+                continue;
+            }
+            matchedBrightness[cell] = brightness;
+            char c = frameChars[row][col];
+            if (newSequence || chars[row][col] != c) {
+                chars[row][col] = c;
+                changedCells[numChangedCells++] = cell;
+            }
+        }
+        return numChangedCells;
+    }
+
+    /**
+     * @return the characters chosen for the last frame, by row and column. The same array is updated by
+     * every frame of the sequence, so it must not be changed.
+     */
+    public char[][] getChars() {
+        return chars;
+    }
+
+    /**
+     * @return the number of rows of characters, or 0 before the first frame.
+     */
+    public int getNumRows() {
+        return chars == null ? 0 : chars.length;
+    }
+
+    /**
+     * @return the number of columns of characters, or 0 before the first frame.
+     */
+    public int getNumCols() {
+        return getNumRows() == 0 ? 0 : chars[0].length;
+    }
+
+    /**
+     * @return the indexes (row * number of columns + column) of the cells whose characters changed in the
+     * last frame, in an increasing order. Only the first getNumChangedCells() indexes are valid, and the
+     * array is reused by every frame, so it must not be changed.
+     */
+    public int[] getChangedCells() {
+        return changedCells;
+    }
+
+    /**
+     * @return the number of cells whose characters changed in the last frame.
+     */
+    public int getNumChangedCells() {
+        return numChangedCells;
+    }
+
+    /*
+     * Allocates the buffers for a sequence of frames of the given size, with the given number of rows and
+     * columns of tiles.
+     */
+    private void startSequence(int width, int height, int numRows, int numCols) {
+        frameWidth = width;
+        frameHeight = height;
+        chars = new char[numRows][numCols];
+        frameChars = new char[numRows][numCols];
+        matchedBrightness = new double[numRows * numCols];
+        changedCells = new int[matchedBrightness.length];
+    }
+}
@@ -0,0 +1,190 @@
+package ascii_art.img_to_char;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * A table of the brightnesses of the ASCII characters in one font and resolution, persisted to a compact
+ * binary file, so that a new process doesn't have to initialize AWT fonts and render the glyphs before it
+ * can match its first image. When the file exists, it is memory-mapped and read once; only the characters
+ * that are missing from it are rendered (by CharRenderer), and the file is rewritten with them on save.
+ * The file is written to a temporary file first and then moved over the old one, so that a process never
+ * reads a partially written table. Every save writes its own, uniquely named temporary file in the
+ * directory of the store, so processes that save the same store at once never write to the same file,
+ * and the last one to move its file wins. Any failure to read or write the file is logged, and the
+ * brightnesses are rendered instead.
+ * The file consists of a header (magic number, version, font name hash, resolution and table size, all
+ * ints) followed by one double per character, NaN for the characters that weren't rendered yet.
+ */
+class GlyphBrightnessStore {
+
+    // The directory of the files is given by this system property, or is the temporary directory:
+    private static final String DIRECTORY_PROPERTY = "ascii_art.glyph_store_dir";
+    private static final String DEFAULT_DIRECTORY_PROPERTY = "java.io.tmpdir";
+    // The file is named by the sanitized font name, the hash of the font name (so that fonts whose names
+    // are sanitized to the same name have different files) and the resolution:
+    private static final String FILENAME_FORMAT = "glyphs-%s-%08x-%d.bin";
+    private static final String TEMP_SUFFIX = ".tmp";  // the temporary file is named <store file><n>.tmp.
+    private static final String ILLEGAL_FILENAME_CHARS = "[^A-Za-z0-9_]";  // replaced in the font name.
+    private static final String FILENAME_CHAR_REPLACEMENT = "_";
+    private static final int MAGIC_NUMBER = 0x47425331;  // "GBS1".
+    private static final int VERSION = 1;
+    private static final int HEADER_INTS = 5;
+    private static final int TABLE_SIZE = 128;  // the characters stored in the table are [0, TABLE_SIZE).
+    private static final String READ_ERROR = "Failed to read the glyph store ";
+    private static final String WRITE_ERROR = "Failed to write the glyph store ";
+
+    // The stores that were opened by this process, by their file path:
+    private static final Map<Path, GlyphBrightnessStore> STORES = new HashMap<>();
+
+    private final Path path;  // the file of the store.
+    private final String fontName;
+    private final int pixels;  // the resolution of the rendered glyphs.
+    private final double[] table;  // the brightness of each character, NaN if it is unknown.
+    private boolean dirty;  // true iff the table has brightnesses that aren't in the file.
+
+    /*
+     * Constructor. Loads the table from the file, if it exists and is valid.
+     */
+    private GlyphBrightnessStore(Path path, String fontName, int pixels) {
+        this.path = path;
+        this.fontName = fontName;
+        this.pixels = pixels;
+        this.table = new double[TABLE_SIZE];
+        Arrays.fill(table, Double.NaN);
+        load();
+    }
+
+    /**
+     * Returns the store of the given font and resolution, opening (and loading) it on the first call.
+     * @param fontName the name of the font.
+     * @param pixels the width and height, in pixels, of the rendered glyphs.
+     * @return the store of the given font and resolution.
+     */
+    static GlyphBrightnessStore get(String fontName, int pixels) {
+        String directory = System.getProperty(DIRECTORY_PROPERTY,
+                System.getProperty(DEFAULT_DIRECTORY_PROPERTY));
+        String filename = String.format(FILENAME_FORMAT,
+                fontName.replaceAll(ILLEGAL_FILENAME_CHARS, FILENAME_CHAR_REPLACEMENT), fontName.hashCode(),
+                pixels);
+        Path path = Paths.get(directory, filename);
+        synchronized (STORES) {
+            return STORES.computeIfAbsent(path, p -> new GlyphBrightnessStore(p, fontName, pixels));
+        }
+    }
+
+    /**
+     * Forgets the stores that were opened by this process, so that the next call to get opens and loads the
+     * store again, from the file in the current directory of the stores (if it exists). The stores that
+     * were returned before are still usable.
+     */
+    static void forgetOpenStores() {
+        synchronized (STORES) {
+            STORES.clear();
+        }
+    }
+
+    /**
+     * Returns the brightness of the given character: from the table if it is there, otherwise it is
+     * rendered and added to the table.
+     * @param c the character.
+     * @return the brightness of the character, in the range [0, 1].
+     */
+    synchronized double getBrightness(char c) {
+        if (c < TABLE_SIZE && !Double.isNaN(table[c])) {
+            return table[c];
+        }
+        double brightness = CharRenderer.getBrightness(c, pixels, fontName);
+        if (c < TABLE_SIZE) {
+            table[c] = brightness;
+            dirty = true;
+        }
+        return brightness;
+    }
+
+    /**
+     * Writes the table to the file, if it has brightnesses that aren't in the file yet.
+     */
+    synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(getFileSize());
+        buffer.putInt(MAGIC_NUMBER).putInt(VERSION).putInt(fontName.hashCode()).putInt(pixels)
+                .putInt(TABLE_SIZE);
+        for (double brightness : table) {
+            buffer.putDouble(brightness);
+        }
+        buffer.flip();
+        Path tempPath = null;
+        try {
+            tempPath = Files.createTempFile(path.getParent(), path.getFileName().toString(), TEMP_SUFFIX);
+            try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } catch (IOException e) {
+            Logger.getGlobal().warning(WRITE_ERROR + path + ": " + e);
+            deleteTempFile(tempPath);
+        }
+    }
+
+    /*
+     * Deletes the given temporary file of a failed save, if it was created and wasn't moved.
+     */
+    private static void deleteTempFile(Path tempPath) {
+        if (tempPath == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(tempPath);
+        } catch (IOException ignored) {
+            // the failure of the save was already logged.
+        }
+    }
+
+    /*
+     * Maps the file and reads the table from it. Does nothing if the file doesn't exist, and ignores it if
+     * its header doesn't match the font and resolution of the store.
+     */
+    private void load() {
+        if (!Files.isRegularFile(path)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() != getFileSize()) {
+                return;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC_NUMBER || buffer.getInt() != VERSION ||
+                    buffer.getInt() != fontName.hashCode() || buffer.getInt() != pixels ||
+                    buffer.getInt() != TABLE_SIZE) {
+                return;
+            }
+            buffer.asDoubleBuffer().get(table);
+        } catch (IOException e) {
+            Logger.getGlobal().warning(READ_ERROR + path + ": " + e);
+        }
+    }
+
+    /*
+     * Returns the size of the file, in bytes.
+     */
+    private static int getFileSize() {
+        return HEADER_INTS * Integer.BYTES + TABLE_SIZE * Double.BYTES;
+    }
+}
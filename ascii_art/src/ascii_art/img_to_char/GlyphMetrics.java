@@ -0,0 +1,85 @@
+package ascii_art.img_to_char;
+
+/**
+ * The rendered image of a character in some font and resolution, together with its brightness (the ratio
+ * of the white pixels in it) and its mask (its shape, downsampled to MASK_SIZE x MASK_SIZE bits). Objects
+ * of this class are shared by the glyph cache of CharRenderer, so the bitmap must not be modified.
+ */
+class GlyphMetrics {
+
+    static final int MASK_SIZE = 8;  // the width and height of the mask, so that it fits in a long.
+
+    private final boolean[][] bitmap;  // the rendered character, true for white pixels.
+    private final double brightness;  // the number of white pixels divided by the number of pixels.
+    private final long mask;  // the bit y * MASK_SIZE + x is 1 iff the cell (x, y) of the bitmap is white.
+
+    /**
+     * Constructor. Calculates the brightness of the given bitmap.
+     * @param bitmap the rendered character, true for white pixels.
+     */
+    GlyphMetrics(boolean[][] bitmap) {
+        this.bitmap = bitmap;
+        int numPixels = 0;
+        int numWhitePixels = 0;
+        for (boolean[] row : bitmap) {
+            for (boolean pixel : row) {
+                if (pixel) {
+                    numWhitePixels++;
+                }
+                numPixels++;
+            }
+        }
+        this.brightness = ((double) numWhitePixels) / numPixels;
+        this.mask = calculateMask(bitmap);
+    }
+
+    /**
+     * @return the rendered character, true for white pixels. Must not be modified.
+     */
+    boolean[][] getBitmap() {
+        return bitmap;
+    }
+
+    /**
+     * @return the number of white pixels divided by the number of pixels in the rendered character.
+     */
+    double getBrightness() {
+        return brightness;
+    }
+
+    /**
+     * @return the mask of the rendered character: the bitmap divided into MASK_SIZE x MASK_SIZE cells,
+     * where the bit y * MASK_SIZE + x is 1 iff all the pixels of the cell (x, y) are white. A cell that has
+     * any black pixel is black, so that the thin strokes of the character survive the downsampling.
+     */
+    long getMask() {
+        return mask;
+    }
+
+    /*
+     * Calculates the mask of the given bitmap. If the bitmap is smaller than the mask, every cell is one
+     * pixel, and some pixels are in more than one cell.
+     */
+    private static long calculateMask(boolean[][] bitmap) {
+        int pixels = bitmap.length;
+        long mask = 0;
+        for (int cellY = 0 ; cellY < MASK_SIZE ; cellY++) {
+            int startY = cellY * pixels / MASK_SIZE;
+            int endY = Math.max((cellY + 1) * pixels / MASK_SIZE, startY + 1);
+            for (int cellX = 0 ; cellX < MASK_SIZE ; cellX++) {
+                int startX = cellX * pixels / MASK_SIZE;
+                int endX = Math.max((cellX + 1) * pixels / MASK_SIZE, startX + 1);
+                boolean white = true;
+                for (int y = startY ; y < endY && white ; y++) {
+                    for (int x = startX ; x < endX && white ; x++) {
+                        white = bitmap[y][x];
+                    }
+                }
+                if (white) {
+                    mask |= 1L << (cellY * MASK_SIZE + cellX);
+                }
+            }
+        }
+        return mask;
+    }
+}
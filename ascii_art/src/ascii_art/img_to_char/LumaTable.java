@@ -0,0 +1,74 @@
+package ascii_art.img_to_char;
+
+import image.Pixels;
+
+/**
+ * Lookup tables of the part of the scaled grey value of a pixel that each of its 8-bit channels adds, so
+ * that the grey value of a pixel takes three lookups and two additions, without multiplications or
+ * floating point in the loops over the pixels. The grey values are scaled like in BrightnessIntegralImage,
+ * so a white pixel is GREY_SCALE * 255 in both tables, and the sums of the grey values stay exact.
+ * The SRGB table weighs the channel values as they are stored (gamma-encoded). The LINEAR table first
+ * decodes them to linear light with the sRGB transfer function, so the grey value of a pixel is
+ * proportional to its luminance. The brightness of a character is the fraction of its pixels that are
+ * covered, which is linear in the light too, so in linear light dark and mid-tone areas are matched to the
+ * characters that really look as bright as them from afar, instead of to too dark characters.
+ */
+final class LumaTable {
+
+    // The Rec. 709 coefficients of the grey formula, scaled so that they sum to GREY_SCALE:
+    private static final double RED_COEFFICIENT = 2126;
+    private static final double GREEN_COEFFICIENT = 7152;
+    private static final double BLUE_COEFFICIENT = 722;
+    private static final int NUM_CHANNEL_VALUES = 256;
+    private static final int MAX_CHANNEL_VALUE = NUM_CHANNEL_VALUES - 1;
+    // The sRGB transfer function: the linear part below the threshold, and the power curve above it:
+    private static final double LINEAR_THRESHOLD = 0.04045;
+    private static final double LINEAR_SLOPE = 12.92;
+    private static final double CURVE_OFFSET = 0.055;
+    private static final double CURVE_EXPONENT = 2.4;
+
+    /**
+     * The table of the gamma-encoded channel values, the default.
+     */
+    static final LumaTable SRGB = new LumaTable(false);
+
+    /**
+     * The table of the channel values decoded to linear light.
+     */
+    static final LumaTable LINEAR = new LumaTable(true);
+
+    private final int[] red = new int[NUM_CHANNEL_VALUES];  // the scaled grey value of each red value.
+    private final int[] green = new int[NUM_CHANNEL_VALUES];  // the scaled grey value of each green value.
+    private final int[] blue = new int[NUM_CHANNEL_VALUES];  // the scaled grey value of each blue value.
+
+    /*
+     * Constructor. Fills the tables for the channel values as they are, or decoded to linear light.
+     */
+    private LumaTable(boolean linear) {
+        for (int value = 0 ; value < NUM_CHANNEL_VALUES ; value++) {
+            double light = linear ? toLinear(value) : value;
+            red[value] = (int) Math.round(RED_COEFFICIENT * light);
+            green[value] = (int) Math.round(GREEN_COEFFICIENT * light);
+            blue[value] = (int) Math.round(BLUE_COEFFICIENT * light);
+        }
+    }
+
+    /**
+     * Calculates the grey value of the pixel, given in the default ARGB color model, scaled by GREY_SCALE.
+     * @param rgb the pixel in the default ARGB color model.
+     * @return the scaled grey value of the pixel.
+     */
+    int getScaledGrey(int rgb) {
+        return red[Pixels.getRed(rgb)] + green[Pixels.getGreen(rgb)] + blue[Pixels.getBlue(rgb)];
+    }
+
+    /*
+     * Decodes the given gamma-encoded channel value to linear light, in the same range [0, 255].
+     */
+    private static double toLinear(int value) {
+        double encoded = (double) value / MAX_CHANNEL_VALUE;
+        double linear = encoded <= LINEAR_THRESHOLD ? encoded / LINEAR_SLOPE :
+                Math.pow((encoded + CURVE_OFFSET) / (1 + CURVE_OFFSET), CURVE_EXPONENT);
+        return linear * MAX_CHANNEL_VALUE;
+    }
+}
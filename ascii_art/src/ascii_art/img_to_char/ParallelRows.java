@@ -0,0 +1,52 @@
+package ascii_art.img_to_char;
+
+import java.util.concurrent.CancellationException;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Runs a computation over the rows of a grid, either on the calling thread or split into bands of rows
+ * on the common ForkJoinPool. The computation of each row must write only to that row, so that the result
+ * doesn't depend on the mode. The computation is cancelled between rows if the calling thread is
+ * interrupted, even when the rows are processed by other threads.
+ */
+final class ParallelRows {
+
+    private ParallelRows() {
+    }
+
+    /**
+     * Performs the given action for every row index in [0, numRows).
+     * @param numRows the number of rows.
+     * @param parallel true iff the rows should be processed in parallel.
+     * @param rowAction the action to perform for each row index.
+     * @throws CancellationException if the calling thread is interrupted. The rows that weren't started yet
+     *                               are skipped, and the interrupt status of the thread is kept.
+     */
+    static void forEachRow(int numRows, boolean parallel, IntConsumer rowAction) {
+        Thread caller = Thread.currentThread();
+        if (!parallel) {
+            for (int row = 0 ; row < numRows ; row++) {
+                checkInterrupted(caller);
+                rowAction.accept(row);
+            }
+            return;
+        }
+        IntStream.range(0, numRows).parallel().forEach(row -> {
+            checkInterrupted(caller);
+            rowAction.accept(row);
+        });
+    }
+
+    /**
+     * Checks whether the given thread was interrupted, without clearing its interrupt status, so that the
+     * long computations it waits for can stop early.
+     * @param thread the thread whose computation should stop if it is interrupted.
+     * @throws CancellationException if the given thread is interrupted.
+     */
+    static void checkInterrupted(Thread thread) {
+        if (thread.isInterrupted()) {
+            throw new CancellationException();
+        }
+    }
+}
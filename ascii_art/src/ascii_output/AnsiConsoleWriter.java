@@ -0,0 +1,104 @@
+package ascii_output;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.logging.Logger;
+
+/**
+ * Writes chars to cells of an ANSI terminal through a single buffered writer, so that a whole update of the
+ * terminal is sent at once, when it is flushed. Every cell is two columns wide (the char and a space), like
+ * the rows of ConsoleAsciiOutput, and the cells are counted from zero.
+ */
+public class AnsiConsoleWriter {
+
+    private static final String ESCAPE = "\033[";  // the control sequence introducer.
+    private static final String CLEAR_SCREEN = ESCAPE + "2J";
+    private static final String HIDE_CURSOR = ESCAPE + "?25l";
+    private static final String SHOW_CURSOR = ESCAPE + "?25h";
+    private static final String RESET_COLOR = ESCAPE + "0m";
+    private static final String ERASE_BELOW = ESCAPE + "J";  // erases from the cursor to the end of screen.
+    private static final char CURSOR_POSITION = 'H';  // ends the cursor position sequence.
+    private static final char PARAMETER_SEPARATOR = ';';
+    private static final int COLUMNS_PER_CELL = 2;
+    private static final char CELL_PADDING = ' ';  // the second column of each cell.
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String WRITE_ERROR = "Failed to write to the console: ";
+
+    private final Writer writer;  // the buffered writer of the console.
+
+    /**
+     * Constructor. Writes to the standard output. The standard output itself isn't closed by this writer.
+     */
+    public AnsiConsoleWriter() {
+        this.writer = new BufferedWriter(new OutputStreamWriter(System.out), BUFFER_SIZE);
+    }
+
+    /**
+     * Clears the terminal and hides the cursor.
+     */
+    public void clear() {
+        write(HIDE_CURSOR + RESET_COLOR + CLEAR_SCREEN);
+    }
+
+    /**
+     * Moves the cursor to the given cell.
+     * @param row the row of the cell.
+     * @param col the column of the cell.
+     */
+    public void moveTo(int row, int col) {
+        write(ESCAPE + (row + 1) + PARAMETER_SEPARATOR + (col * COLUMNS_PER_CELL + 1) + CURSOR_POSITION);
+    }
+
+    /**
+     * Writes the given chars to consecutive cells, starting at the cell of the cursor.
+     * @param chars the chars to write.
+     * @param from the index of the first char to write.
+     * @param to the index after the last char to write.
+     */
+    public void writeCells(char[] chars, int from, int to) {
+        try {
+            for (int i = from ; i < to ; i++) {
+                writer.write(chars[i]);
+                writer.write(CELL_PADDING);
+            }
+        } catch (IOException e) {
+            Logger.getGlobal().severe(WRITE_ERROR + e.getMessage());
+        }
+    }
+
+    /**
+     * Moves the cursor to the start of the row under the given number of rows, erases everything from there
+     * to the end of the screen (such as the rows of a bigger previous update), shows the cursor, and flushes
+     * all the writes to the console.
+     * @param numRows the number of rows that were written.
+     */
+    public void finish(int numRows) {
+        moveTo(numRows, 0);
+        write(ERASE_BELOW + SHOW_CURSOR);
+        flush();
+    }
+
+    /**
+     * Sends all the writes since the last flush to the console.
+     */
+    public void flush() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            Logger.getGlobal().severe(WRITE_ERROR + e.getMessage());
+        }
+    }
+
+    /*
+     * Writes the given control sequence.
+     */
+    private void write(String sequence) {
+        try {
+            writer.write(sequence);
+        } catch (IOException e) {
+            Logger.getGlobal().severe(WRITE_ERROR + e.getMessage());
+        }
+    }
+}
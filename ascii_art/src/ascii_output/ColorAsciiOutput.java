@@ -0,0 +1,28 @@
+package ascii_output;
+
+/**
+ * An object implementing this interface can output a 2D array of chars together with a color for every
+ * char, row by row, as the rows are produced.
+ * The rows of an image are given by a call to start, a call to outputRow for every row in order, and a
+ * call to finish.
+ */
+public interface ColorAsciiOutput {
+    /**
+     * Start the output of a new 2D array of chars.
+     * @param numCols the number of chars in each row.
+     */
+    void start(int numCols);
+
+    /**
+     * Output the next row. The arrays may be reused by the caller after this method returns, so they must
+     * not be kept.
+     * @param row the chars of the row.
+     * @param colors the color of each char of the row, in the default RGB color model.
+     */
+    void outputRow(char[] row, int[] colors);
+
+    /**
+     * Finish the output of the current 2D array of chars.
+     */
+    void finish();
+}
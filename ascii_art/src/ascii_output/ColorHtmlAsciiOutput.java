@@ -0,0 +1,110 @@
+package ascii_output;
+
+import image.Pixels;
+import java.io.IOException;
+
+/**
+ * Output a 2D array of chars, each in its own color, to an HTML file viewable in a web browser.
+ * To keep the file small, the colors are quantized to 4 bits per channel (written as #rgb), and every run
+ * of consecutive chars with similar colors (no quantized channel differs from the color of the first char
+ * of the run by more than MAX_CHANNEL_DIFFERENCE), possibly spanning several rows, is wrapped in a single
+ * span of the color of its first char. Spaces join any run, since their color isn't visible.
+ */
+public class ColorHtmlAsciiOutput extends HtmlAsciiOutput implements ColorAsciiOutput {
+    private static final int QUANTIZATION_SHIFT = 4;  // the number of low bits dropped from each channel.
+    private static final int NIBBLE_BITS = 4;
+    private static final int NIBBLE_MASK = 0xf;
+    private static final int MAX_CHANNEL_DIFFERENCE = 1;  // in quantized units, for colors to be similar.
+    private static final int NO_COLOR = -1;  // the color of the run when no span is open.
+    private static final char INVISIBLE_CHAR = ' ';
+    private static final String SPAN_START_FORMAT = "<span style=color:#%03x>";
+    private static final String SPAN_END = "</span>";
+
+    private int runColor = NO_COLOR;  // the quantized color of the open span.
+
+    public ColorHtmlAsciiOutput(String filename, String fontName) {
+        super(filename, fontName);
+    }
+
+    /**
+     * Constructor for ASCII art whose chars stand for rectangular sub-images.
+     * @param filename the name of the HTML file.
+     * @param fontName the name of the font of the chars.
+     * @param cellAspectRatio the ratio of the height of the sub-image of each char to its width.
+     */
+    public ColorHtmlAsciiOutput(String filename, String fontName, double cellAspectRatio) {
+        super(filename, fontName, cellAspectRatio);
+    }
+
+    @Override
+    public void start(int numCols) {
+        runColor = NO_COLOR;
+        super.start(numCols);
+    }
+
+    @Override
+    public void outputRow(char[] row, int[] colors) {
+        if (!isOpen()) {
+            return;
+        }
+        try {
+            int runStart = 0;  // the first char of the row that wasn't written yet.
+            for (int x = 0; x < row.length ; x++) {
+                int color = quantize(colors[x]);
+                if (row[x] == INVISIBLE_CHAR || isSimilar(color, runColor)) {
+                    continue;
+                }
+                writeEscaped(row, runStart, x);
+                if (runColor != NO_COLOR) {
+                    write(SPAN_END);
+                }
+                write(String.format(SPAN_START_FORMAT, color));
+                runColor = color;
+                runStart = x;
+            }
+            writeEscaped(row, runStart, row.length);
+            newLine();
+        } catch(IOException e) {
+            fail();
+        }
+    }
+
+    @Override
+    public void finish() {
+        if (isOpen() && runColor != NO_COLOR) {
+            try {
+                write(SPAN_END);
+            } catch(IOException e) {
+                fail();
+            }
+        }
+        super.finish();
+    }
+
+    /*
+     * Checks if the given quantized color is similar to the color of the run. Returns true iff a span is
+     * open and no channel of the colors differs by more than MAX_CHANNEL_DIFFERENCE.
+     */
+    private static boolean isSimilar(int color, int runColor) {
+        if (runColor == NO_COLOR) {
+            return false;
+        }
+        for (int shift = 0 ; shift <= 2 * NIBBLE_BITS ; shift += NIBBLE_BITS) {
+            if (Math.abs(((color >> shift) & NIBBLE_MASK) - ((runColor >> shift) & NIBBLE_MASK)) >
+                    MAX_CHANNEL_DIFFERENCE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Quantizes the given color to 4 bits per channel, packed as 0xRGB.
+     */
+    private static int quantize(int rgb) {
+        int red = Pixels.getRed(rgb) >> QUANTIZATION_SHIFT;
+        int green = Pixels.getGreen(rgb) >> QUANTIZATION_SHIFT;
+        int blue = Pixels.getBlue(rgb) >> QUANTIZATION_SHIFT;
+        return (red << (2 * NIBBLE_BITS)) | (green << NIBBLE_BITS) | blue;
+    }
+}
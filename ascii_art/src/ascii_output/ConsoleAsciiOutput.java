@@ -2,15 +2,23 @@ package ascii_output;
 
 /**
  * Output a 2D array of chars to the console.
+ * Every row is printed as soon as it is given.
  * @author Dan Nirel
- */public class ConsoleAsciiOutput implements AsciiOutput{
+ */public class ConsoleAsciiOutput implements StreamingAsciiOutput{
     @Override
-    public void output(char[][] chars) {
-        for (int y = 0; y < chars.length ; y++) {
-            for (int x = 0; x < chars[y].length; x++) {
-                System.out.print(chars[y][x] + " ");
-            }
-            System.out.println();
+    public void start(int numCols) {
+    }
+
+    @Override
+    public void outputRow(char[] row) {
+        StringBuilder line = new StringBuilder(row.length * 2);
+        for (char c : row) {
+            line.append(c).append(' ');
         }
+        System.out.println(line);
+    }
+
+    @Override
+    public void finish() {
     }
 }
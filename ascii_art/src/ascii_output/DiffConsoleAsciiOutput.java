@@ -0,0 +1,82 @@
+package ascii_output;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Output a 2D array of chars to an ANSI terminal, redrawing only what changed since the previous array.
+ * The last array is kept, every row is compared with the row at the same index in it, and only the runs
+ * of changed chars are written, each after a cursor move, through a single buffered writer that is flushed
+ * once per array. The first array, and any array with a different number of columns, is drawn in full on
+ * a cleared screen. The array must fit in the terminal, since the cells are addressed by their position on
+ * the screen.
+ */
+public class DiffConsoleAsciiOutput implements StreamingAsciiOutput {
+
+    // Unchanged chars between two changed runs of at most this length are rewritten, since a cursor move
+    // costs more than rewriting them:
+    private static final int MAX_REWRITTEN_GAP = 3;
+
+    private final AnsiConsoleWriter console = new AnsiConsoleWriter();  // the writer of the terminal.
+    private final List<char[]> lastRows = new ArrayList<>();  // the rows that are on the screen.
+    private int numLastRows;  // the number of rows of the last array (lastRows may have more arrays).
+    private int numCols = -1;  // the number of chars in each row, or -1 before the first array.
+    private int rowIndex;  // the index of the next row of the current array.
+
+    @Override
+    public void start(int numCols) {
+        if (numCols != this.numCols) {
+            this.numCols = numCols;
+            lastRows.clear();
+            numLastRows = 0;
+            console.clear();
+        }
+        rowIndex = 0;
+    }
+
+    @Override
+    public void outputRow(char[] row) {
+        if (rowIndex >= lastRows.size()) {
+            lastRows.add(new char[numCols]);
+        }
+        char[] lastRow = lastRows.get(rowIndex);
+        if (rowIndex >= numLastRows) {  // the row isn't on the screen.
+            console.moveTo(rowIndex, 0);
+            console.writeCells(row, 0, numCols);
+        } else {
+            writeChangedRuns(row, lastRow);
+        }
+        System.arraycopy(row, 0, lastRow, 0, numCols);
+        rowIndex++;
+    }
+
+    @Override
+    public void finish() {
+        numLastRows = rowIndex;
+        console.finish(numLastRows);
+    }
+
+    /*
+     * Writes the runs of chars of the given row that differ from the chars of the given last row at the same
+     * index. Runs that are separated by at most MAX_REWRITTEN_GAP unchanged chars are written as one run.
+     */
+    private void writeChangedRuns(char[] row, char[] lastRow) {
+        int col = 0;
+        while (col < numCols) {
+            if (row[col] == lastRow[col]) {
+                col++;
+                continue;
+            }
+            int start = col;
+            int end = col + 1;  // the index after the last changed char of the run.
+            for (col = end ; col < numCols && col - end <= MAX_REWRITTEN_GAP ; col++) {
+                if (row[col] != lastRow[col]) {
+                    end = col + 1;
+                }
+            }
+            console.moveTo(rowIndex, start);
+            console.writeCells(row, start, end);
+            col = end;
+        }
+    }
+}
@@ -1,29 +1,118 @@
 package ascii_output;
 
 import java.io.BufferedWriter;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Output a 2D array of chars to an HTML file viewable in a web browser.
+ * The file is opened by start, every row is written as soon as it is given, and the file is closed by
+ * finish. The HTML is very repetitive, so it can be written gzip-compressed, which makes it a few percent
+ * of its size; browsers open such a file when it is served with the gzip content encoding, and it can be
+ * opened locally after gunzip.
  * @author Dan Nirel
  */
-public class HtmlAsciiOutput implements AsciiOutput {
+public class HtmlAsciiOutput implements StreamingAsciiOutput {
     private static final double BASE_LINE_SPACING = 0.8;
     private static final double BASE_FONT_SIZE = 150.0;
+    private static final String STREAM_NAME = "the output stream";  // names the stream in the error message.
+    private static final int GZIP_BUFFER_SIZE = 1 << 16;  // the size of the buffer of the compressed bytes.
 
     private final String fontName;
-    private final String filename;
+    private final String filename;  // the file to write to, or null if writing to the stream.
+    private final OutputStream stream;  // the stream to write to, or null if writing to the file.
+    private final double cellAspectRatio;  // the ratio of the height of each char to its width.
+    private final boolean compressed;  // true iff the output is gzip-compressed.
+    private BufferedWriter writer;  // the writer of the current output, null if there is none.
+    private boolean failed;  // true iff the current (or the last) output failed.
 
     public HtmlAsciiOutput(String filename, String fontName) {
+        this(filename, fontName, 1);
+    }
+
+    /**
+     * Constructor for ASCII art whose chars stand for rectangular sub-images. The lines are spaced so that
+     * the chars keep the proportions of the sub-images.
+     * @param filename the name of the HTML file.
+     * @param fontName the name of the font of the chars.
+     * @param cellAspectRatio the ratio of the height of the sub-image of each char to its width.
+     */
+    public HtmlAsciiOutput(String filename, String fontName, double cellAspectRatio) {
+        this(filename, fontName, cellAspectRatio, false);
+    }
+
+    /**
+     * Constructor for ASCII art whose chars stand for rectangular sub-images, optionally written to the file
+     * gzip-compressed.
+     * @param filename the name of the HTML file. The name isn't changed for the compressed output, so it
+     *                 should end with ".gz".
+     * @param fontName the name of the font of the chars.
+     * @param cellAspectRatio the ratio of the height of the sub-image of each char to its width.
+     * @param compressed true iff the file should be written gzip-compressed.
+     */
+    public HtmlAsciiOutput(String filename, String fontName, double cellAspectRatio, boolean compressed) {
         this.fontName = fontName;
         this.filename = filename;
+        this.stream = null;
+        this.cellAspectRatio = cellAspectRatio;
+        this.compressed = compressed;
+    }
+
+    /**
+     * Constructor for a single output to the given stream (e.g. the body of an HTTP response) instead of a
+     * file. The text is encoded in UTF-8, and the stream is closed by finish.
+     * @param stream the stream to write the HTML to.
+     * @param fontName the name of the font of the chars.
+     */
+    public HtmlAsciiOutput(OutputStream stream, String fontName) {
+        this(stream, fontName, 1, false);
+    }
+
+    /**
+     * Constructor for a single output to the given stream of ASCII art whose chars stand for rectangular
+     * sub-images, optionally gzip-compressed. The text is encoded in UTF-8, and the stream is closed by
+     * finish.
+     * @param stream the stream to write the HTML to.
+     * @param fontName the name of the font of the chars.
+     * @param cellAspectRatio the ratio of the height of the sub-image of each char to its width.
+     * @param compressed true iff the HTML should be written gzip-compressed.
+     */
+    public HtmlAsciiOutput(OutputStream stream, String fontName, double cellAspectRatio, boolean compressed) {
+        this.fontName = fontName;
+        this.filename = null;
+        this.stream = stream;
+        this.cellAspectRatio = cellAspectRatio;
+        this.compressed = compressed;
+    }
+
+    /**
+     * Constructor for a single output to the given channel (e.g. a FileChannel or a socket channel) of ASCII
+     * art whose chars stand for rectangular sub-images, optionally gzip-compressed. The text is encoded in
+     * UTF-8, and the channel is closed by finish.
+     * @param channel the channel to write the HTML to.
+     * @param fontName the name of the font of the chars.
+     * @param cellAspectRatio the ratio of the height of the sub-image of each char to its width.
+     * @param compressed true iff the HTML should be written gzip-compressed.
+     */
+    public HtmlAsciiOutput(WritableByteChannel channel, String fontName, double cellAspectRatio,
+                           boolean compressed) {
+        this(Channels.newOutputStream(channel), fontName, cellAspectRatio, compressed);
     }
 
     @Override
-    public void output(char[][] chars) {
-        try(BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
+    public void start(int numCols) {
+        failed = false;
+        try {
+            writer = new BufferedWriter(openWriter());
             writer.write(String.format(
                 "<!DOCTYPE html>\n"+
                 "<html>\n"+
@@ -37,27 +126,122 @@ public class HtmlAsciiOutput implements AsciiOutput {
                     "\tFONT-SIZE:%frem;"+
                     "\tLETTER-SPACING:0.15em;"+
                     "\tLINE-HEIGHT:%fem;\">\n",
-                    fontName, BASE_FONT_SIZE/chars[0].length, BASE_LINE_SPACING));
-
-            for(int y = 0 ; y < chars.length ; y++) {
-                for (int x = 0; x < chars[y].length ; x++) {
-                    String htmlRep;
-                    switch(chars[y][x]) {
-                        case '<': htmlRep = "&lt;";  break;
-                        case '>': htmlRep = "&gt;";  break;
-                        case '&': htmlRep = "&amp;"; break;
-                        default:  htmlRep = String.valueOf(chars[y][x]);
-                    }
-                    writer.write(htmlRep);
-                }
-                writer.newLine();
-            }
+                    fontName, BASE_FONT_SIZE/numCols, BASE_LINE_SPACING*cellAspectRatio));
+        } catch(IOException e) {
+            fail();
+        }
+    }
+
+    @Override
+    public void outputRow(char[] row) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writeEscaped(row, 0, row.length);
+            newLine();
+        } catch(IOException e) {
+            fail();
+        }
+    }
+
+    @Override
+    public void finish() {
+        if (writer == null) {
+            return;
+        }
+        try {
             writer.write(
                 "</p>\n"+
                 "</body>\n"+
                 "</html>\n");
+            writer.close();
+            writer = null;
         } catch(IOException e) {
-            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+            fail();
+        }
+    }
+
+    /**
+     * @return true iff writing the current output, or the last one if it finished, failed. The failure was
+     * logged, and the rest of that output was skipped.
+     */
+    public boolean hasFailed() {
+        return failed;
+    }
+
+    /**
+     * @return true iff an output was started and didn't fail or finish yet.
+     */
+    protected boolean isOpen() {
+        return writer != null;
+    }
+
+    /**
+     * Writes the given HTML as is. Must be called only while the output is open.
+     */
+    protected void write(String html) throws IOException {
+        writer.write(html);
+    }
+
+    /**
+     * Writes a range of the given chars, escaping the HTML special characters. The chars between the special
+     * ones are written directly from the array, as a single run each. Must be called only while the output
+     * is open.
+     */
+    protected void writeEscaped(char[] chars, int from, int to) throws IOException {
+        int runStart = from;  // the first char of the range that wasn't written yet.
+        for (int x = from; x < to ; x++) {
+            String htmlRep;
+            switch(chars[x]) {
+                case '<': htmlRep = "&lt;";  break;
+                case '>': htmlRep = "&gt;";  break;
+                case '&': htmlRep = "&amp;"; break;
+                default:  continue;
+            }
+            writer.write(chars, runStart, x - runStart);
+            writer.write(htmlRep);
+            runStart = x + 1;
+        }
+        writer.write(chars, runStart, to - runStart);
+    }
+
+    /**
+     * Ends the current line. Must be called only while the output is open.
+     */
+    protected void newLine() throws IOException {
+        writer.newLine();
+    }
+
+    /*
+     * Opens the writer of a new output: to the stream if there is one, otherwise to the file, compressed if
+     * requested.
+     */
+    private Writer openWriter() throws IOException {
+        if (stream == null && !compressed) {
+            return new FileWriter(filename);
+        }
+        OutputStream out = stream != null ? stream : new FileOutputStream(filename);
+        if (compressed) {
+            out = new GZIPOutputStream(out, GZIP_BUFFER_SIZE);
+        }
+        return new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Logs the failure, and drops the writer so that the rest of the current output is skipped.
+     */
+    protected void fail() {
+        failed = true;
+        Logger.getGlobal().severe(String.format("Failed to write to \"%s\"",
+                filename != null ? filename : STREAM_NAME));
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch(IOException ignored) {
+                // the failure was already logged.
+            }
+            writer = null;
         }
     }
 }
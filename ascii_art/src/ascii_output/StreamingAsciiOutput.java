@@ -0,0 +1,40 @@
+package ascii_output;
+
+/**
+ * An object implementing this interface can output a 2D array of chars row by row, as the rows are
+ * produced, so that the first rows reach their destination before the last rows are computed, and the
+ * whole array never has to be held in memory.
+ * The rows of an image are given by a call to start, a call to outputRow for every row in order, and a
+ * call to finish.
+ */
+public interface StreamingAsciiOutput extends AsciiOutput {
+    /**
+     * Start the output of a new 2D array of chars.
+     * @param numCols the number of chars in each row.
+     */
+    void start(int numCols);
+
+    /**
+     * Output the next row. The array may be reused by the caller after this method returns, so it must not
+     * be kept.
+     * @param row the chars of the row.
+     */
+    void outputRow(char[] row);
+
+    /**
+     * Finish the output of the current 2D array of chars.
+     */
+    void finish();
+
+    /**
+     * Output the specified 2D array of chars, row by row.
+     */
+    @Override
+    default void output(char[][] chars) {
+        start(chars[0].length);
+        for (char[] row : chars) {
+            outputRow(row);
+        }
+        finish();
+    }
+}
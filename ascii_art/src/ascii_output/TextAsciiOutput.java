@@ -0,0 +1,71 @@
+package ascii_output;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Logger;
+
+/**
+ * Output a 2D array of chars as plain text to a stream (e.g. the body of an HTTP response), one line per
+ * row, encoded in UTF-8. Every row is written as soon as it is given, and the stream is closed by finish,
+ * so an object of this class is used for a single output.
+ */
+public class TextAsciiOutput implements StreamingAsciiOutput {
+    private static final char LINE_SEPARATOR = '\n';
+    private static final String WRITE_ERROR = "Failed to write the text output: ";
+
+    private BufferedWriter writer;  // the writer of the stream, null after a failure or after finish.
+
+    /**
+     * Constructor.
+     * @param stream the stream to write the text to.
+     */
+    public TextAsciiOutput(OutputStream stream) {
+        this.writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void start(int numCols) {
+    }
+
+    @Override
+    public void outputRow(char[] row) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.write(row);
+            writer.write(LINE_SEPARATOR);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    public void finish() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+            writer = null;
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /*
+     * Logs the failure, and drops the writer so that the rest of the output is skipped.
+     */
+    private void fail(IOException e) {
+        Logger.getGlobal().severe(WRITE_ERROR + e.getMessage());
+        try {
+            writer.close();
+        } catch (IOException ignored) {
+            // the failure was already logged.
+        }
+        writer = null;
+    }
+}
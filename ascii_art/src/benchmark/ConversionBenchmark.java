@@ -0,0 +1,208 @@
+package benchmark;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_art.img_to_char.CharRenderer;
+import ascii_output.AsciiOutput;
+import ascii_output.ConsoleAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import image.Image;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Supplier;
+
+/**
+ * Benchmarks the stages of the ASCII art conversion pipeline: loading an image, rendering glyphs, choosing
+ * the characters at several resolutions and charset sizes, and both outputs. Every benchmark is run for a
+ * number of warmup iterations (to let the JIT compile it) and then for a number of measured iterations,
+ * and the average and the minimal time of one operation are printed, one benchmark per line.
+ * The benchmarks marked "cold" empty the glyph cache and the glyph store (which is kept in a temporary
+ * directory of the benchmark) before every iteration, so they measure the work of a process that starts
+ * with no glyphs; the ones marked "warm" reuse the glyphs of the previous iterations, like a long-running
+ * process does.
+ * Usage: java benchmark.ConversionBenchmark [image file] [warmup iterations] [measured iterations]
+ */
+public class ConversionBenchmark {
+
+    private static final String DEFAULT_IMAGE = "success.jpg";
+    private static final String FONT_NAME = "Courier New";
+    private static final int DEFAULT_WARMUP_ITERATIONS = 5;
+    private static final int DEFAULT_MEASURED_ITERATIONS = 10;
+    private static final int CHAR_RESOLUTION = 16;
+    private static final int[] CHARS_IN_ROW = {64, 128, 256};
+    private static final char FIRST_CHAR = ' ';  // the first legal ASCII character.
+    private static final char LAST_CHAR = '~';  // the last legal ASCII character.
+    private static final Character[] SMALL_CHARSET = getCharSet('0', '9');
+    private static final Character[] FULL_CHARSET = getCharSet(FIRST_CHAR, LAST_CHAR);
+    private static final String RESULT_FORMAT = "%-40s avg %10.3f ms  min %10.3f ms%n";
+    private static final String HEADER_FORMAT = "Image %s (%dx%d), %d warmup and %d measured iterations%n";
+    private static final String FILE_ERROR = "Failed to open image file ";
+    private static final String GLYPH_STORE_DIR_PROPERTY = "ascii_art.glyph_store_dir";
+    private static final String GLYPH_STORE_DIR_PREFIX = "benchmark-glyphs";
+    private static final double NANOS_IN_MILLI = 1_000_000.0;
+
+    private static int sink;  // consumes the results of the benchmarks, so the JIT can't eliminate them.
+
+    private final String imageFile;
+    private final int warmupIterations;
+    private final int measuredIterations;
+    private final PrintStream report;  // the stream the results are printed to.
+    private Path glyphStoreDir;  // the temporary directory of the glyph store of the benchmarks.
+
+    /**
+     * Constructor.
+     * @param imageFile the image to benchmark the pipeline on.
+     * @param warmupIterations the number of iterations of every benchmark before it is measured.
+     * @param measuredIterations the number of measured iterations of every benchmark.
+     */
+    public ConversionBenchmark(String imageFile, int warmupIterations, int measuredIterations) {
+        this.imageFile = imageFile;
+        this.warmupIterations = warmupIterations;
+        this.measuredIterations = measuredIterations;
+        this.report = System.out;  // kept, since the console output benchmark redirects System.out.
+    }
+
+    /**
+     * Runs all the benchmarks.
+     * @param args the image file, the number of warmup iterations and the number of measured iterations,
+     *             all optional.
+     */
+    public static void main(String[] args) throws IOException {
+        String imageFile = args.length > 0 ? args[0] : DEFAULT_IMAGE;
+        int warmupIterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_WARMUP_ITERATIONS;
+        int measuredIterations = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_MEASURED_ITERATIONS;
+        new ConversionBenchmark(imageFile, warmupIterations, measuredIterations).run();
+    }
+
+    /**
+     * Runs all the benchmarks and prints their results.
+     */
+    public void run() throws IOException {
+        Image img = Image.fromFile(imageFile);
+        if (img == null) {
+            report.println(FILE_ERROR + imageFile);
+            return;
+        }
+        report.printf(HEADER_FORMAT, imageFile, img.getWidth(), img.getHeight(), warmupIterations,
+                measuredIterations);
+
+        measure("load image", () -> Image.fromFile(imageFile));
+        glyphStoreDir = Files.createTempDirectory(GLYPH_STORE_DIR_PREFIX);
+        System.setProperty(GLYPH_STORE_DIR_PROPERTY, glyphStoreDir.toString());
+        try {
+            runConversionBenchmarks(img);
+            runOutputBenchmarks(img);
+        } finally {
+            clearGlyphStore();
+            Files.deleteIfExists(glyphStoreDir);
+        }
+    }
+
+    /*
+     * Runs the benchmarks of the outputs, on the chars of the highest resolution.
+     */
+    private void runOutputBenchmarks(Image img) throws IOException {
+        char[][] chars = new BrightnessImgCharMatcher(img, FONT_NAME).chooseChars(
+                CHARS_IN_ROW[CHARS_IN_ROW.length - 1], FULL_CHARSET);
+        File htmlFile = File.createTempFile("benchmark", ".html");
+        htmlFile.deleteOnExit();
+        measureOutput("html output", new HtmlAsciiOutput(htmlFile.getPath(), FONT_NAME), chars);
+        File gzipFile = File.createTempFile("benchmark", ".html.gz");
+        gzipFile.deleteOnExit();
+        measureOutput("gzip html output", new HtmlAsciiOutput(gzipFile.getPath(), FONT_NAME, 1, true), chars);
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            measureOutput("console output", new ConsoleAsciiOutput(), chars);
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    /*
+     * Runs the benchmarks of rendering the glyphs and of choosing the characters.
+     */
+    private void runConversionBenchmarks(Image img) {
+        measure("render glyphs (" + FULL_CHARSET.length + " chars, cold)", () -> {
+            CharRenderer.clearCache();
+            int numRows = 0;
+            for (char c = FIRST_CHAR ; c <= LAST_CHAR ; c++) {
+                numRows += CharRenderer.getImg(c, CHAR_RESOLUTION, FONT_NAME).length;
+            }
+            return numRows;
+        });
+        for (Character[] charSet : new Character[][] {SMALL_CHARSET, FULL_CHARSET}) {
+            for (int charsInRow : CHARS_IN_ROW) {
+                String name = "chooseChars " + charsInRow + " x " + charSet.length + " chars";
+                // A new matcher and no glyphs every time, so nothing computed by a previous iteration is
+                // reused:
+                measure(name + " (cold)", () -> {
+                    clearGlyphStore();
+                    return new BrightnessImgCharMatcher(img, FONT_NAME).chooseChars(charsInRow, charSet);
+                });
+                BrightnessImgCharMatcher matcher = new BrightnessImgCharMatcher(img, FONT_NAME);
+                measure(name + " (warm)", () -> matcher.chooseChars(charsInRow, charSet));
+            }
+        }
+    }
+
+    /*
+     * Empties the glyph caches of the process and deletes the files of the glyph store, so that the glyphs
+     * are rendered again.
+     */
+    private void clearGlyphStore() {
+        BrightnessImgCharMatcher.clearGlyphCaches();
+        File[] storeFiles = glyphStoreDir.toFile().listFiles();
+        if (storeFiles == null) {
+            return;
+        }
+        for (File storeFile : storeFiles) {
+            storeFile.delete();
+        }
+    }
+
+    /*
+     * Measures the given output of the given chars.
+     */
+    private void measureOutput(String name, AsciiOutput output, char[][] chars) {
+        measure(name, () -> {
+            output.output(chars);
+            return chars.length;
+        });
+    }
+
+    /*
+     * Runs the given operation for the warmup iterations and then for the measured iterations, and prints
+     * the average and the minimal time of one measured iteration.
+     */
+    private void measure(String name, Supplier<Object> operation) {
+        for (int i = 0 ; i < warmupIterations ; i++) {
+            sink += operation.get().hashCode();
+        }
+        long totalNanos = 0;
+        long minNanos = Long.MAX_VALUE;
+        for (int i = 0 ; i < measuredIterations ; i++) {
+            long start = System.nanoTime();
+            sink += operation.get().hashCode();
+            long nanos = System.nanoTime() - start;
+            totalNanos += nanos;
+            minNanos = Math.min(minNanos, nanos);
+        }
+        report.printf(RESULT_FORMAT, name,
+                totalNanos / NANOS_IN_MILLI / measuredIterations, minNanos / NANOS_IN_MILLI);
+    }
+
+    /*
+     * Returns all the characters in the given range.
+     */
+    private static Character[] getCharSet(char start, char end) {
+        Character[] charSet = new Character[end - start + 1];
+        for (char c = start ; c <= end ; c++) {
+            charSet[c - start] = c;
+        }
+        return charSet;
+    }
+}
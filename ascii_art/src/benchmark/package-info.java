@@ -0,0 +1,4 @@
+/**
+ * Benchmarks of the ASCII art conversion pipeline.
+ */
+package benchmark;
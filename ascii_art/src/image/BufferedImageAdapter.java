@@ -0,0 +1,160 @@
+package image;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+/**
+ * A package-private class of the package image.
+ * Wraps a decoded BufferedImage without copying its pixels. For the common layouts (packed int RGB/ARGB
+ * and interleaved byte BGR/ABGR) the pixels are read directly from the raster's underlying data array;
+ * for any other layout they are read through BufferedImage.getRGB, one pixel at a time.
+ * Like FileImage, each dimension is padded to a power of 2, with the image centered. The padding is
+ * virtual: coordinates in the margins are mapped to the default background color, and nothing is allocated.
+ */
+class BufferedImageAdapter implements Image {
+    private static final int DEFAULT_RGB = Color.WHITE.getRGB();
+
+    // How the pixels are read:
+    private static final int LAYOUT_GENERIC = 0;  // through BufferedImage.getRGB.
+    private static final int LAYOUT_INT_RGB = 1;  // one int per pixel, no alpha.
+    private static final int LAYOUT_INT_ARGB = 2;  // one int per pixel, with alpha.
+    private static final int LAYOUT_BYTE_RGB = 3;  // interleaved bytes, no alpha.
+    private static final int LAYOUT_BYTE_ARGB = 4;  // interleaved bytes, with alpha.
+
+    private final BufferedImage im;
+    private final int width;  // the padded width.
+    private final int height;  // the padded height.
+    private final int origWidth;
+    private final int origHeight;
+    private final int xMargin;  // the column of the padded image where the wrapped image starts.
+    private final int yMargin;  // the row of the padded image where the wrapped image starts.
+
+    private int layout = LAYOUT_GENERIC;
+    private int[] intData;  // the underlying data of an int layout.
+    private byte[] byteData;  // the underlying data of a byte layout.
+    private int dataOffset;  // the index of the pixel (0, 0) in the underlying data.
+    private int scanlineStride;  // the distance between vertically adjacent pixels in the underlying data.
+    private int pixelStride;  // the distance between horizontally adjacent pixels in the underlying data.
+    private int redOffset, greenOffset, blueOffset, alphaOffset;  // the offsets of the bands of a pixel.
+
+    public BufferedImageAdapter(BufferedImage im) {
+        this.im = im;
+        this.origWidth = im.getWidth();
+        this.origHeight = im.getHeight();
+        this.width = Pixels.getPowerOfTwoGreaterThan(origWidth);
+        this.height = Pixels.getPowerOfTwoGreaterThan(origHeight);
+        this.xMargin = (int)Math.floor((width-origWidth)/2.0f);
+        this.yMargin = (int)Math.floor((height-origHeight)/2.0f);
+        switch(im.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+                initIntLayout(LAYOUT_INT_RGB);
+                break;
+            case BufferedImage.TYPE_INT_ARGB:
+                initIntLayout(LAYOUT_INT_ARGB);
+                break;
+            case BufferedImage.TYPE_3BYTE_BGR:
+                initByteLayout(LAYOUT_BYTE_RGB);
+                break;
+            case BufferedImage.TYPE_4BYTE_ABGR:
+                initByteLayout(LAYOUT_BYTE_ARGB);
+                break;
+            default: //any other layout is read through getRGB
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public Color getPixel(int x, int y) {
+        return new Color(getRGB(x, y));
+    }
+
+    @Override
+    public int getRGB(int x, int y) {
+        if(x < 0 || y < 0 || x >= width || y >= height)
+            throw new IndexOutOfBoundsException();
+        int origX = x - xMargin;
+        int origY = y - yMargin;
+        if(origX < 0 || origY < 0 || origX >= origWidth || origY >= origHeight)
+            return DEFAULT_RGB; //the pixel is in the margins
+        int index = dataOffset + origY*scanlineStride + origX*pixelStride;
+        switch(layout) {
+            case LAYOUT_INT_RGB:
+                return Pixels.OPAQUE_ALPHA | intData[index];
+            case LAYOUT_INT_ARGB:
+                return intData[index];
+            case LAYOUT_BYTE_RGB:
+                return Pixels.OPAQUE_ALPHA | getByteRGB(index);
+            case LAYOUT_BYTE_ARGB:
+                return ((byteData[index+alphaOffset] & Pixels.CHANNEL_MASK) << Pixels.ALPHA_SHIFT) |
+                       getByteRGB(index);
+            default:
+                return im.getRGB(origX, origY);
+        }
+    }
+
+    /*
+     * Reads the red, green and blue bytes of the pixel at the given index of the byte data.
+     */
+    private int getByteRGB(int index) {
+        return Pixels.toRGB(byteData[index+redOffset] & Pixels.CHANNEL_MASK,
+                            byteData[index+greenOffset] & Pixels.CHANNEL_MASK,
+                            byteData[index+blueOffset] & Pixels.CHANNEL_MASK);
+    }
+
+    /*
+     * Uses the int array of the raster directly, if the raster is laid out as expected for the image type.
+     */
+    private void initIntLayout(int intLayout) {
+        Raster raster = im.getRaster();
+        DataBuffer buffer = raster.getDataBuffer();
+        if(!(buffer instanceof DataBufferInt) ||
+           !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel))
+            return;
+        var sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        intData = ((DataBufferInt) buffer).getData();
+        scanlineStride = sampleModel.getScanlineStride();
+        pixelStride = 1;
+        dataOffset = buffer.getOffset() -
+                raster.getSampleModelTranslateY()*scanlineStride - raster.getSampleModelTranslateX();
+        layout = intLayout;
+    }
+
+    /*
+     * Uses the byte array of the raster directly, if the raster is laid out as expected for the image type.
+     */
+    private void initByteLayout(int byteLayout) {
+        Raster raster = im.getRaster();
+        DataBuffer buffer = raster.getDataBuffer();
+        if(!(buffer instanceof DataBufferByte) ||
+           !(raster.getSampleModel() instanceof ComponentSampleModel))
+            return;
+        var sampleModel = (ComponentSampleModel) raster.getSampleModel();
+        int[] bandOffsets = sampleModel.getBandOffsets();
+        byteData = ((DataBufferByte) buffer).getData();
+        scanlineStride = sampleModel.getScanlineStride();
+        pixelStride = sampleModel.getPixelStride();
+        dataOffset = buffer.getOffset() - raster.getSampleModelTranslateY()*scanlineStride -
+                raster.getSampleModelTranslateX()*pixelStride;
+        //the bands are ordered red, green, blue (and alpha), wherever they are in the pixel
+        redOffset = bandOffsets[0];
+        greenOffset = bandOffsets[1];
+        blueOffset = bandOffsets[2];
+        alphaOffset = byteLayout == LAYOUT_BYTE_ARGB ? bandOffsets[3] : 0;
+        layout = byteLayout;
+    }
+}
@@ -1,6 +1,7 @@
 package image;
 
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
 
 /**
@@ -12,21 +13,46 @@ public interface Image {
     int getWidth();
     int getHeight();
 
+    /**
+     * Returns the color of the pixel as an int in the default ARGB color model, without allocating a Color.
+     * Implementations that store their pixels packed should override this method.
+     * @param x the column of the pixel
+     * @param y the row of the pixel
+     * @return the ARGB value of the pixel
+     */
+    default int getRGB(int x, int y) {
+        return getPixel(x, y).getRGB();
+    }
+
     /**
      * Open an image from file. Each dimensions of the returned image is guaranteed
      * to be a power of 2, but the dimensions may be different.
+     * Binary PPM files (with the .ppm extension) are memory-mapped instead of decoded,
+     * so they may be larger than the heap.
      * @param filename a path to an image file on disk
      * @return an object implementing Image if the operation was successful,
      * null otherwise
      */
     static Image fromFile(String filename) {
         try {
+            if(filename.toLowerCase().endsWith(MappedImage.EXTENSION))
+                return new MappedImage(filename);
             return new FileImage(filename);
         } catch(IOException ioe) {
             return null;
         }
     }
 
+    /**
+     * Wraps an already decoded image, without copying its pixels. Each dimension of the returned image is
+     * a power of 2, like in fromFile; the padding is virtual.
+     * @param im the decoded image
+     * @return an object implementing Image that reads its pixels from the given image
+     */
+    static Image fromBufferedImage(BufferedImage im) {
+        return new BufferedImageAdapter(im);
+    }
+
     /**
      * Allows iterating the pixels' colors by order (first row, second row and so on).
      * @return an Iterable<Color> that can be traversed with a foreach loop
@@ -37,15 +63,77 @@ public interface Image {
     }
 
     /**
-     * Breaks the image down to square sub-images of a specified width/height in pixels.
+     * Visits the pixels of the image by order (first row, second row and so on), without allocating.
+     * @param visitor the callback to call for every pixel
+     */
+    default void forEachPixel(PixelVisitor visitor) {
+        forEachPixel(0, 0, getWidth(), getHeight(), visitor);
+    }
+
+    /**
+     * Visits the pixels of a rectangular region of the image by order (first row, second row and so on),
+     * without allocating.
+     * @param x the column of the upper left pixel of the region
+     * @param y the row of the upper left pixel of the region
+     * @param width the width of the region, in pixels
+     * @param height the height of the region, in pixels
+     * @param visitor the callback to call for every pixel of the region
+     */
+    default void forEachPixel(int x, int y, int width, int height, PixelVisitor visitor) {
+        for(int row = y ; row < y+height ; row++) {
+            for(int col = x ; col < x+width ; col++) {
+                visitor.visitPixel(col, row, getRGB(col, row));
+            }
+        }
+    }
+
+    /**
+     * Visits the square tiles of a specified width/height in pixels by order (first row of tiles, second row
+     * and so on), without allocating a sub-image per tile. Only whole tiles are visited.
+     * @param pixels the width and height, in pixels, of each square tile
+     * @param visitor the callback to call for every tile
+     */
+    default void forEachTile(int pixels, TileVisitor visitor) {
+        forEachTile(pixels, pixels, visitor);
+    }
+
+    /**
+     * Visits the rectangular tiles of a specified width and height in pixels by order (first row of tiles,
+     * second row and so on), without allocating a sub-image per tile. Only whole tiles are visited.
+     * @param width the width, in pixels, of each tile
+     * @param height the height, in pixels, of each tile
+     * @param visitor the callback to call for every tile
+     */
+    default void forEachTile(int width, int height, TileVisitor visitor) {
+        for(int y = 0 ; y+height <= getHeight() ; y += height) {
+            for(int x = 0 ; x+width <= getWidth() ; x += width) {
+                visitor.visitTile(x, y, width, height);
+            }
+        }
+    }
+
+    /**
+     * Breaks the image down to square sub-images of a specified width/height in pixels. Only whole
+     * sub-images are returned.
      * @param pixels the width and height, in pixels, of each square sub-image
      * @return an Iterable of the sub-images
      */
     default Iterable<Image> squareSubImagesOfSize(int pixels) {
+        return subImagesOfSize(pixels, pixels);
+    }
+
+    /**
+     * Breaks the image down to rectangular sub-images of a specified width and height in pixels. Only whole
+     * sub-images are returned, like the tiles of forEachTile.
+     * @param width the width, in pixels, of each sub-image
+     * @param height the height, in pixels, of each sub-image
+     * @return an Iterable of the sub-images
+     */
+    default Iterable<Image> subImagesOfSize(int width, int height) {
         return new ImageIterableProperty<>(
                 this,
-                (x,y)->new ImageView(this,x,y,pixels,pixels),
-                pixels,
-                pixels);
+                (x,y)->new ImageView(this,x,y,width,height),
+                width,
+                height);
     }
 }
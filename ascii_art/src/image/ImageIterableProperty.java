@@ -2,21 +2,30 @@ package image;
 
 import java.util.Iterator;
 import java.util.NoSuchElementException;
-import java.util.function.BiFunction;
 
 /**
  * A package-private class of the package image.
+ * Iterates the properties of whole tiles only, like Image.forEachTile: the last row and column of tiles
+ * are dropped if the increments don't divide the height and width of the image.
  * @author Dan Nirel
  */
 class ImageIterableProperty<T> implements Iterable<T> {
+    /**
+     * Supplies the property at some coordinates. Takes primitive coordinates, so they aren't boxed.
+     */
+    @FunctionalInterface
+    interface PropertySupplier<T> {
+        T apply(int x, int y);
+    }
+
     private final Image img;
-    private final BiFunction<Integer, Integer, T> propertySupplier;
+    private final PropertySupplier<T> propertySupplier;
     private final int xIncrement;
     private final int yIncrement;
 
     public ImageIterableProperty(
             Image img,
-            BiFunction<Integer, Integer, T> propertySupplier,
+            PropertySupplier<T> propertySupplier,
             int xIncrement,
             int yIncrement) {
         this.img = img;
@@ -32,7 +41,7 @@ class ImageIterableProperty<T> implements Iterable<T> {
 
             @Override
             public boolean hasNext() {
-                return y < img.getHeight();
+                return y + yIncrement <= img.getHeight() && xIncrement <= img.getWidth();
             }
 
             @Override
@@ -41,7 +50,7 @@ class ImageIterableProperty<T> implements Iterable<T> {
                     throw new NoSuchElementException();
                 var next = propertySupplier.apply(x, y);
                 x += xIncrement;
-                if (x >= img.getWidth()) {
+                if (x + xIncrement > img.getWidth()) {
                     x = 0;
                     y += yIncrement;
                 }
@@ -48,6 +48,13 @@ class ImageView implements Image {
         return img.getPixel(startX+x, startY+y);
     }
 
+    @Override
+    public int getRGB(int x, int y) {
+        if(x < 0 || y < 0 || x >= getWidth() || y >= getHeight())
+            throw new IndexOutOfBoundsException();
+        return img.getRGB(startX+x, startY+y);
+    }
+
     @Override
     public int getWidth() {
         return width;
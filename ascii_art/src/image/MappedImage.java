@@ -0,0 +1,152 @@
+package image;
+
+import java.awt.*;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A package-private class of the package image.
+ * An image in the binary PPM format (P6), whose pixels are memory-mapped from the file instead of being
+ * decoded to the heap. The operating system pages the parts of the file that are read in and out on
+ * demand, so the image may be far larger than the heap. The file is mapped in chunks of whole rows,
+ * since a single mapping is limited to 2GB.
+ * Like FileImage, each dimension is padded to a power of 2, with the image centered. The padding is
+ * virtual: coordinates in the margins are mapped to the default background color.
+ */
+class MappedImage implements Image {
+    static final String EXTENSION = ".ppm";  // the extension of the files that are mapped.
+
+    private static final int DEFAULT_RGB = Color.WHITE.getRGB();
+    private static final int BYTES_PER_PIXEL = 3;
+    private static final int MAX_CHANNEL_VALUE = 255;  // the maximal supported maxval of the file.
+    private static final int MAX_CHUNK_BYTES = 1 << 30;  // the maximal size of one mapping.
+    private static final String MAGIC_NUMBER = "P6";
+    private static final char COMMENT_START = '#';
+
+    private final int width;  // the padded width.
+    private final int height;  // the padded height.
+    private final int origWidth;
+    private final int origHeight;
+    private final int xMargin;  // the column of the padded image where the file image starts.
+    private final int yMargin;  // the row of the padded image where the file image starts.
+    private final int maxValue;  // the maximal value of a channel in the file.
+    private final int rowBytes;  // the number of bytes in one row of the file.
+    private final int rowsPerChunk;  // the number of rows in each mapped chunk.
+    private final MappedByteBuffer[] chunks;  // the mapped rows of the file.
+
+    public MappedImage(String filename) throws IOException {
+        Path path = Paths.get(filename);
+        long dataStart;
+        int[] header = new int[3];  // width, height, maxval.
+        try(InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+            dataStart = readHeader(in, header);
+        }
+        origWidth = header[0];
+        origHeight = header[1];
+        maxValue = header[2];
+        if(origWidth <= 0 || origHeight <= 0 || maxValue <= 0 || maxValue > MAX_CHANNEL_VALUE ||
+           (long)origWidth*BYTES_PER_PIXEL > MAX_CHUNK_BYTES)
+            throw new IOException("Unsupported PPM image: " + filename);
+        width = Pixels.getPowerOfTwoGreaterThan(origWidth);
+        height = Pixels.getPowerOfTwoGreaterThan(origHeight);
+        xMargin = (int)Math.floor((width-origWidth)/2.0f);
+        yMargin = (int)Math.floor((height-origHeight)/2.0f);
+        rowBytes = origWidth*BYTES_PER_PIXEL;
+        rowsPerChunk = MAX_CHUNK_BYTES / rowBytes;
+        chunks = new MappedByteBuffer[(origHeight + rowsPerChunk - 1) / rowsPerChunk];
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if(channel.size() < dataStart + (long)rowBytes*origHeight)
+                throw new IOException("Truncated PPM image: " + filename);
+            //the mappings stay valid after the channel is closed
+            for(int i = 0 ; i < chunks.length ; i++) {
+                int chunkRows = Math.min(rowsPerChunk, origHeight - i*rowsPerChunk);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        dataStart + (long)i*rowsPerChunk*rowBytes, (long)chunkRows*rowBytes);
+            }
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public Color getPixel(int x, int y) {
+        return new Color(getRGB(x, y));
+    }
+
+    @Override
+    public int getRGB(int x, int y) {
+        if(x < 0 || y < 0 || x >= width || y >= height)
+            throw new IndexOutOfBoundsException();
+        int origX = x - xMargin;
+        int origY = y - yMargin;
+        if(origX < 0 || origY < 0 || origX >= origWidth || origY >= origHeight)
+            return DEFAULT_RGB; //the pixel is in the margins
+        MappedByteBuffer chunk = chunks[origY / rowsPerChunk];
+        int index = (origY % rowsPerChunk)*rowBytes + origX*BYTES_PER_PIXEL;
+        return Pixels.OPAQUE_ALPHA |
+               Pixels.toRGB(getChannel(chunk, index), getChannel(chunk, index+1), getChannel(chunk, index+2));
+    }
+
+    /*
+     * Reads one channel of a pixel, scaled to the range [0, 255].
+     */
+    private int getChannel(MappedByteBuffer chunk, int index) {
+        int value = chunk.get(index) & Pixels.CHANNEL_MASK;
+        return maxValue == MAX_CHANNEL_VALUE ? value : value*MAX_CHANNEL_VALUE/maxValue;
+    }
+
+    /*
+     * Reads the PPM header (the magic number, the width, the height and the maxval, separated by whitespace
+     * and comments) into the given array, and returns the number of bytes it takes in the file.
+     */
+    private static long readHeader(InputStream in, int[] header) throws IOException {
+        long[] position = new long[1];
+        if(!readToken(in, position).equals(MAGIC_NUMBER))
+            throw new IOException("Not a binary PPM image");
+        try {
+            for(int i = 0 ; i < header.length ; i++)
+                header[i] = Integer.parseInt(readToken(in, position));
+        } catch(NumberFormatException e) {
+            throw new IOException("Malformed PPM header", e);
+        }
+        return position[0]; //a single whitespace character after the maxval was consumed too
+    }
+
+    /*
+     * Reads the next whitespace-separated token, skipping comments, and consumes the single whitespace
+     * character after it. Advances the given position by the number of bytes read.
+     */
+    private static String readToken(InputStream in, long[] position) throws IOException {
+        StringBuilder token = new StringBuilder();
+        int c;
+        while((c = in.read()) != -1) {
+            position[0]++;
+            if(c == COMMENT_START && token.length() == 0) {
+                while((c = in.read()) != -1 && c != '\n' && c != '\r')
+                    position[0]++;
+                position[0]++;
+            } else if(Character.isWhitespace(c)) {
+                if(token.length() > 0)
+                    return token.toString();
+            } else {
+                token.append((char)c);
+            }
+        }
+        throw new IOException("Truncated PPM header");
+    }
+}
@@ -0,0 +1,16 @@
+package image;
+
+/**
+ * A callback that is called for every pixel of an image (or of a region of it) by Image.forEachPixel.
+ * The color is given as an int in the default ARGB color model, so no object is allocated per pixel.
+ */
+@FunctionalInterface
+public interface PixelVisitor {
+    /**
+     * Visit one pixel.
+     * @param x the column of the pixel
+     * @param y the row of the pixel
+     * @param rgb the color of the pixel in the default ARGB color model
+     */
+    void visitPixel(int x, int y, int rgb);
+}
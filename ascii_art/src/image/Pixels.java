@@ -0,0 +1,63 @@
+package image;
+
+/**
+ * Helpers for the pixels of images, shared by the images and by everything that reads their pixels: the
+ * layout of a pixel in the default ARGB color model (8 bits per channel, packed in one int), and the padded
+ * size of an image.
+ */
+public final class Pixels {
+
+    // The offsets of the channels in an ARGB int:
+    public static final int ALPHA_SHIFT = 24;
+    public static final int RED_SHIFT = 16;
+    public static final int GREEN_SHIFT = 8;
+    public static final int CHANNEL_MASK = 0xff;  // extracts one 8-bit channel (or an unsigned byte).
+    public static final int OPAQUE_ALPHA = 0xff000000;  // the alpha channel of an opaque pixel.
+
+    private Pixels() {
+    }
+
+    /**
+     * @param rgb a pixel in the default ARGB color model.
+     * @return the red channel of the pixel, in the range [0, 255].
+     */
+    public static int getRed(int rgb) {
+        return (rgb >> RED_SHIFT) & CHANNEL_MASK;
+    }
+
+    /**
+     * @param rgb a pixel in the default ARGB color model.
+     * @return the green channel of the pixel, in the range [0, 255].
+     */
+    public static int getGreen(int rgb) {
+        return (rgb >> GREEN_SHIFT) & CHANNEL_MASK;
+    }
+
+    /**
+     * @param rgb a pixel in the default ARGB color model.
+     * @return the blue channel of the pixel, in the range [0, 255].
+     */
+    public static int getBlue(int rgb) {
+        return rgb & CHANNEL_MASK;
+    }
+
+    /**
+     * Packs the given channels into a pixel in the default RGB color model (without alpha).
+     * @param red the red channel, in the range [0, 255].
+     * @param green the green channel, in the range [0, 255].
+     * @param blue the blue channel, in the range [0, 255].
+     * @return the packed pixel.
+     */
+    public static int toRGB(int red, int green, int blue) {
+        return red << RED_SHIFT | green << GREEN_SHIFT | blue;
+    }
+
+    /**
+     * Each dimension of an image is padded to a power of 2.
+     * @param num a positive dimension of an image.
+     * @return the smallest power of 2 that is at least the given dimension.
+     */
+    static int getPowerOfTwoGreaterThan(int num) {
+        return (int)Math.pow(2, Math.ceil(Math.log(num)/Math.log(2)));
+    }
+}
@@ -0,0 +1,17 @@
+package image;
+
+/**
+ * A callback that is called for every tile of an image by Image.forEachTile. The tile is given by its
+ * coordinates only, so no object is allocated per tile.
+ */
+@FunctionalInterface
+public interface TileVisitor {
+    /**
+     * Visit one tile.
+     * @param x the column of the upper left pixel of the tile
+     * @param y the row of the upper left pixel of the tile
+     * @param width the width of the tile, in pixels
+     * @param height the height of the tile, in pixels
+     */
+    void visitTile(int x, int y, int width, int height);
+}
@@ -0,0 +1,152 @@
+package ascii_art;
+
+import static testing.Assert.assertEquals;
+import static testing.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import javax.imageio.ImageIO;
+
+/**
+ * Tests of ConversionServer, through HTTP requests to a server on a free port of the loopback address.
+ */
+public class ConversionServerTest {
+
+    private static final String URL_FORMAT = "http://127.0.0.1:%d/convert%s";
+    private static final int IMAGE_SIZE = 64;  // a power of 2, so the image isn't padded.
+    private static final int OVERSIZED_UPLOAD_LENGTH = (16 << 20) + 1;  // one byte more than the limit.
+    private static final String HTML_TYPE = "text/html; charset=utf-8";
+    private static final int STATUS_OK = 200;
+    private static final int STATUS_BAD_REQUEST = 400;
+    private static final int STATUS_PAYLOAD_TOO_LARGE = 413;
+
+    /**
+     * Runs the tests.
+     * @param args unused.
+     * @throws IOException if a request fails.
+     */
+    public static void main(String[] args) throws IOException {
+        ConversionServer server = ConversionServer.parse(new String[] {"-port", "0", "-threads", "2"});
+        server.run();
+        try {
+            int port = server.getPort();
+            convertsToStreamedHtml(port);
+            convertsToTextInTheRequestedAspect(port);
+            rejectsWrongCharsWithoutPrinting(port);
+            rejectsOversizedUploads(port);
+        } finally {
+            server.stop();
+        }
+        System.out.println("ConversionServerTest: OK");
+    }
+
+    /*
+     * A small image is converted to a whole html page, in the requested cell aspect ratio.
+     */
+    private static void convertsToStreamedHtml(int port) throws IOException {
+        HttpURLConnection connection = post(port, "?res=16&aspect=2", createImage());
+        assertEquals(STATUS_OK, connection.getResponseCode(), "html status");
+        assertEquals(HTML_TYPE, connection.getContentType(), "html content type");
+        String html = read(connection);
+        assertTrue(html.startsWith("<!DOCTYPE html>"), "html start");
+        assertTrue(html.contains("LINE-HEIGHT:1.600000em"), "html line height of aspect 2");
+        assertTrue(html.endsWith("</html>\n"), "html end");
+    }
+
+    /*
+     * The text format has a line per row of characters, and the aspect parameter halves the rows.
+     */
+    private static void convertsToTextInTheRequestedAspect(int port) throws IOException {
+        String text = read(post(port, "?res=16&format=text&chars=all", createImage()));
+        assertEquals(IMAGE_SIZE / 4, text.split("\n").length, "square rows");
+        text = read(post(port, "?res=16&format=text&chars=all&aspect=2", createImage()));
+        String[] rows = text.split("\n");
+        assertEquals(IMAGE_SIZE / 8, rows.length, "rows of aspect 2");
+        assertEquals(16, rows[0].length(), "columns of aspect 2");
+    }
+
+    /*
+     * A wrong chars parameter is answered with 400 and its message, and nothing is printed to the console.
+     */
+    private static void rejectsWrongCharsWithoutPrinting(int port) throws IOException {
+        PrintStream console = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(printed, true, StandardCharsets.UTF_8));
+        HttpURLConnection connection;
+        try {
+            connection = post(port, "?chars=a_z", createImage());
+            assertEquals(STATUS_BAD_REQUEST, connection.getResponseCode(), "wrong chars status");
+        } finally {
+            System.setOut(console);
+        }
+        assertEquals("", printed.toString(StandardCharsets.UTF_8), "printed by a wrong chars parameter");
+        assertEquals("Wrong chars range given!\n", readError(connection), "wrong chars message");
+    }
+
+    /*
+     * An upload that is longer than the limit is answered with 413, without being decoded.
+     */
+    private static void rejectsOversizedUploads(int port) throws IOException {
+        HttpURLConnection connection = post(port, "", new byte[OVERSIZED_UPLOAD_LENGTH]);
+        assertEquals(STATUS_PAYLOAD_TOO_LARGE, connection.getResponseCode(), "oversized upload status");
+    }
+
+    /*
+     * Encodes a PNG of a horizontal gradient.
+     */
+    private static byte[] createImage() throws IOException {
+        BufferedImage image = new BufferedImage(IMAGE_SIZE, IMAGE_SIZE, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0 ; y < IMAGE_SIZE ; y++) {
+            for (int x = 0 ; x < IMAGE_SIZE ; x++) {
+                int grey = x * 0xff / (IMAGE_SIZE - 1);
+                image.setRGB(x, y, grey << 16 | grey << 8 | grey);
+            }
+        }
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        return png.toByteArray();
+    }
+
+    /*
+     * Posts the given body to the converter with the given query. The body may be only partly sent if the
+     * server responds before reading all of it.
+     */
+    private static HttpURLConnection post(int port, String query, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(String.format(URL_FORMAT, port, query))
+                .openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        try (OutputStream stream = connection.getOutputStream()) {
+            stream.write(body);
+        } catch (IOException e) {
+            // the server responded and closed the connection before the whole body was sent.
+        }
+        return connection;
+    }
+
+    /*
+     * Reads the body of a successful response.
+     */
+    private static String read(HttpURLConnection connection) throws IOException {
+        try (InputStream stream = connection.getInputStream()) {
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /*
+     * Reads the body of an error response.
+     */
+    private static String readError(HttpURLConnection connection) throws IOException {
+        try (InputStream stream = connection.getErrorStream()) {
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package ascii_art.img_to_char;
+
+import static testing.Assert.assertEquals;
+import static testing.Assert.assertTrue;
+
+import image.Image;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Tests of BrightnessPyramid.
+ */
+public class BrightnessPyramidTest {
+
+    private static final int PADDED_SIZE = 2048;  // an image of this size isn't padded any further.
+    private static final String FONT = "Courier New";
+
+    /**
+     * Runs the tests.
+     * @param args unused.
+     */
+    public static void main(String[] args) {
+        integralImageIsBuiltOnceForTwoResolutions();
+        interruptCancelsTheLevelBuild(false);
+        interruptCancelsTheLevelBuild(true);
+        System.out.println("BrightnessPyramidTest: OK");
+    }
+
+    /*
+     * The integral image of an image padded to 2048 * 2048 pixels fits in the default cache, so rendering
+     * at two resolutions that can't be derived from each other builds it once, and not once per resolution.
+     */
+    private static void integralImageIsBuiltOnceForTwoResolutions() {
+        Image image = Image.fromBufferedImage(
+                new BufferedImage(PADDED_SIZE, PADDED_SIZE, BufferedImage.TYPE_INT_RGB));
+        BrightnessImgCharMatcher matcher = new BrightnessImgCharMatcher(image, FONT);
+        Character[] charSet = {'0', '1', '2'};
+        matcher.chooseChars(64, charSet);  // tiles of 32 pixels.
+        matcher.chooseChars(100, charSet);  // tiles of 20 pixels.
+        BrightnessPyramid pyramid = matcher.getBrightnessPyramid();
+        assertEquals(2, pyramid.getMisses(), "levels built");
+        assertEquals(1, pyramid.getIntegralImageBuilds(), "integral images built");
+    }
+
+    /*
+     * A level isn't built, and nothing is cached, if the calling thread is interrupted, also when the rows
+     * are summed by other threads. The interrupt status is kept, and once it is cleared the level is built.
+     */
+    private static void interruptCancelsTheLevelBuild(boolean parallel) {
+        Image image = Image.fromBufferedImage(
+                new BufferedImage(PADDED_SIZE, PADDED_SIZE, BufferedImage.TYPE_INT_RGB));
+        BrightnessPyramid pyramid = new BrightnessPyramid(image, parallel,
+                BrightnessPyramid.getDefaultMaxCachedSums());
+        boolean cancelled = false;
+        Thread.currentThread().interrupt();
+        try {
+            pyramid.getLevel(32, false);
+        } catch (CancellationException e) {
+            cancelled = true;
+        } finally {
+            assertTrue(Thread.interrupted(), "interrupt status kept");
+        }
+        assertTrue(cancelled, "level build cancelled");
+        assertEquals(0, pyramid.getIntegralImageBuilds(), "integral images built while interrupted");
+        assertEquals(PADDED_SIZE / 32, pyramid.getLevel(32, false).getNumRows(), "rows after the interrupt");
+        assertEquals(1, pyramid.getIntegralImageBuilds(), "integral images built after the interrupt");
+    }
+}
@@ -0,0 +1,98 @@
+package ascii_art.img_to_char;
+
+import static testing.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests of CharLookupTable.
+ */
+public class CharLookupTableTest {
+
+    private static final long SEED = 21;
+    private static final int NUM_CHANGES = 2000;
+    private static final int NUM_LEVELS = 40;  // few distinct brightnesses, so that there are many ties.
+    private static final int NUM_PROBES = 10_000;  // the brightnesses each table is queried with.
+
+    /**
+     * Runs the tests.
+     * @param args unused.
+     */
+    public static void main(String[] args) {
+        insertAndRemoveMatchBuildingAgain();
+        System.out.println("CharLookupTableTest: OK");
+    }
+
+    /*
+     * A table that characters are inserted into and removed from one at a time chooses the same characters
+     * as a table that is built from scratch with the same characters, after every change, including the
+     * changes of the darkest and the brightest characters and ties of brightness.
+     */
+    private static void insertAndRemoveMatchBuildingAgain() {
+        Random random = new Random(SEED);
+        List<Character> chars = new ArrayList<>();
+        List<Double> brightnesses = new ArrayList<>();
+        CharLookupTable table = new CharLookupTable(new Character[0], new double[0]);
+        for (int change = 0 ; change < NUM_CHANGES ; change++) {
+            if (chars.isEmpty() || random.nextInt(3) > 0) {
+                char c = (char) (' ' + chars.size() + random.nextInt(1000) * 100);
+                if (chars.contains(c)) {
+                    continue;
+                }
+                double brightness = random.nextInt(NUM_LEVELS) / (double) NUM_LEVELS;
+                chars.add(c);
+                brightnesses.add(brightness);
+                table.insert(c, brightness);
+            } else {
+                int index = random.nextInt(chars.size());
+                table.remove(chars.remove(index), brightnesses.remove(index));
+            }
+            assertSameChoices(buildTable(chars, brightnesses), table, random, "after change " + change);
+        }
+    }
+
+    /*
+     * Builds a table of the given characters, ordered by brightness and then by value.
+     */
+    private static CharLookupTable buildTable(List<Character> chars, List<Double> brightnesses) {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0 ; i < chars.size() ; i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparing(brightnesses::get).thenComparing(chars::get));
+        Character[] sortedChars = new Character[order.size()];
+        double[] sortedBrightness = new double[order.size()];
+        for (int i = 0 ; i < sortedChars.length ; i++) {
+            sortedChars[i] = chars.get(order.get(i));
+            sortedBrightness[i] = brightnesses.get(order.get(i));
+        }
+        return new CharLookupTable(sortedChars, sortedBrightness);
+    }
+
+    /*
+     * Checks that both tables have the same characters, and choose the same character for every bucket
+     * edge and for random brightnesses.
+     */
+    private static void assertSameChoices(CharLookupTable expected, CharLookupTable actual, Random random,
+                                          String message) {
+        assertEquals(expected.getNumChars(), actual.getNumChars(), message);
+        for (int i = 0 ; i < expected.getNumChars() ; i++) {
+            assertEquals(expected.getCharAt(i), actual.getCharAt(i), message);
+            assertEquals(expected.getBrightnessAt(i), actual.getBrightnessAt(i), message);
+        }
+        if (expected.getNumChars() == 0) {
+            return;
+        }
+        for (int bucket = 0 ; bucket <= CharLookupTable.NUM_BUCKETS ; bucket++) {
+            double edge = ((double) bucket) / CharLookupTable.NUM_BUCKETS;
+            assertEquals(expected.getIndex(edge), actual.getIndex(edge), message + ", edge " + bucket);
+        }
+        for (int probe = 0 ; probe < NUM_PROBES ; probe++) {
+            double brightness = random.nextDouble();
+            assertEquals(expected.getIndex(brightness), actual.getIndex(brightness), message);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package image;
+
+import static testing.Assert.assertEquals;
+
+import java.awt.Color;
+
+/**
+ * Tests of the default methods of Image.
+ */
+public class ImageTest {
+
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 6;
+
+    /**
+     * Runs the tests.
+     * @param args unused.
+     */
+    public static void main(String[] args) {
+        subImagesStopAtWholeTiles();
+        System.out.println("ImageTest: OK");
+    }
+
+    /*
+     * When the size of the sub-images doesn't divide the size of the image, the partial last row and column
+     * are dropped, as in forEachTile, instead of creating views that exceed the image.
+     */
+    private static void subImagesStopAtWholeTiles() {
+        Image image = new SolidImage(WIDTH, HEIGHT);
+        assertEquals(2, count(image.subImagesOfSize(4, 4)), "4x4 sub-images of 8x6");
+        assertEquals(2, count(image.subImagesOfSize(3, 5)), "3x5 sub-images of 8x6");
+        assertEquals(2, count(image.squareSubImagesOfSize(4)), "square 4 sub-images of 8x6");
+        assertEquals(0, count(image.subImagesOfSize(4, 7)), "sub-images taller than 8x6");
+        assertEquals(0, count(image.subImagesOfSize(9, 1)), "sub-images wider than 8x6");
+        assertEquals(WIDTH * HEIGHT, count(image.pixels()), "pixels of 8x6");
+        int[] numTiles = new int[1];
+        image.forEachTile(4, 4, (x, y, width, height) -> numTiles[0]++);
+        assertEquals(numTiles[0], count(image.subImagesOfSize(4, 4)), "sub-images and tiles of 8x6");
+    }
+
+    /*
+     * Counts the elements of the given iterable, and checks that each sub-image is inside the image.
+     */
+    private static int count(Iterable<?> iterable) {
+        int count = 0;
+        for (Object element : iterable) {
+            if (element instanceof Image) {
+                ((Image) element).getPixel(0, 0);
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /*
+     * A white image of any size, not padded to powers of 2.
+     */
+    private static class SolidImage implements Image {
+
+        private final int width;  // the width of the image, in pixels.
+        private final int height;  // the height of the image, in pixels.
+
+        SolidImage(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public Color getPixel(int x, int y) {
+            return Color.WHITE;
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package testing;
+
+/**
+ * The assertions of the tests. Every test class has a main method that runs its tests and throws an
+ * AssertionError from the first assertion that fails, so that a test run ends with an error status.
+ */
+public final class Assert {
+
+    private static final String EXPECTED_FORMAT = "%s: expected <%s> but was <%s>";
+
+    private Assert() {
+    }
+
+    /**
+     * @param condition the condition that must hold.
+     * @param message describes the condition.
+     * @throws AssertionError if the condition doesn't hold.
+     */
+    public static void assertTrue(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /**
+     * @param expected the expected value.
+     * @param actual the actual value.
+     * @param message describes the value.
+     * @throws AssertionError if the values differ.
+     */
+    public static void assertEquals(long expected, long actual, String message) {
+        if (expected != actual) {
+            throw new AssertionError(String.format(EXPECTED_FORMAT, message, expected, actual));
+        }
+    }
+
+    /**
+     * @param expected the expected value.
+     * @param actual the actual value.
+     * @param message describes the value.
+     * @throws AssertionError if the values aren't equal.
+     */
+    public static void assertEquals(Object expected, Object actual, String message) {
+        if (expected == null ? actual != null : !expected.equals(actual)) {
+            throw new AssertionError(String.format(EXPECTED_FORMAT, message, expected, actual));
+        }
+    }
+}